@@ -1,4 +1,16 @@
 import sys
+import time
+
+RESULT_PREFIX = "#study_plugin_result "
+PROTOCOL_VERSION = 1
+WINDOWS_ENV = "STUDY_PLUGIN_WINDOWS"
+_last_result_time = time.time()
+
+
+def start_timer():
+    """ starts measuring duration of the first test"""
+    global _last_result_time
+    _last_result_time = time.time()
 
 def get_file_text(path):
     """ get file text by path"""
@@ -89,16 +101,35 @@ def test_window_text_deleted(error_text="Don't just delete task text"):
     passed()
 
 
-def failed(message="Please, reload the task and try again."):
-    print("#study_plugin FAILED + " + message)
+def report(status, message=None, name=None):
+    """ prints result of test as json line, duration of test is time since previous result"""
+    global _last_result_time
+    import json
+    now = time.time()
+    result = {"version": PROTOCOL_VERSION, "name": name, "status": status,
+              "duration": round(now - _last_result_time, 6)}
+    if message is not None:
+        result["message"] = message
+    _last_result_time = now
+    print(RESULT_PREFIX + json.dumps(result))
+    sys.stdout.flush()
+
+def failed(message="Please, reload the task and try again.", name=None):
+    report("failed", message, name or sys._getframe(1).f_code.co_name)
 
-def passed():
-    print("#study_plugin test OK")
+def passed(name=None):
+    report("passed", None, name or sys._getframe(1).f_code.co_name)
 
 def get_task_windows():
+    """ returns texts of task windows passed by plugin in environment or written next to checked file"""
+    import os
+    windows_json = os.environ.get(WINDOWS_ENV)
+    if windows_json is not None:
+        import json
+        return [window.strip() for window in json.loads(windows_json)]
+
     prefix = "#study_plugin_window = "
     path = sys.argv[-1]
-    import os
     windows_path = os.path.splitext(path)[0] + "_windows"
     windows = []
     f = open(windows_path, "r")
@@ -0,0 +1,144 @@
+""" Runs command with limits of resources and reports which limit was exceeded.
+usage: study_sandbox.py <limits json> <executable> [arguments]
+Limits are also applied by study_worker to children running tests"""
+import json
+import os
+import select
+import signal
+import subprocess
+import sys
+
+LIMIT_PREFIX = "#study_plugin_limit "
+MEMORY_LIMIT_EXCEEDED = "Memory limit exceeded"
+CPU_LIMIT_EXCEEDED = "CPU time limit exceeded"
+OUTPUT_LIMIT_EXCEEDED = "Output limit exceeded"
+OPEN_FILES_LIMIT_EXCEEDED = "Open files limit exceeded"
+PROCESSES_LIMIT_EXCEEDED = "Processes limit exceeded"
+ERROR_TAIL = 4096
+CHUNK = 65536
+
+
+def apply_limits(limits):
+    """ applies limits to current process, they are inherited by processes it starts"""
+    if not limits:
+        return
+    try:
+        import resource
+    except ImportError:
+        return
+
+    def set_limit(kind, soft, hard):
+        try:
+            current_hard = resource.getrlimit(kind)[1]
+            if current_hard != resource.RLIM_INFINITY:
+                soft = min(soft, current_hard)
+                hard = min(hard, current_hard)
+            resource.setrlimit(kind, (soft, hard))
+        except (ValueError, resource.error):
+            pass
+
+    if limits.get("memory", 0) > 0:
+        memory = limits["memory"] * 1024 * 1024
+        set_limit(resource.RLIMIT_AS, memory, memory)
+    if limits.get("cpu_time", 0) > 0:
+        # process gets SIGXCPU at soft limit and is killed a second later
+        set_limit(resource.RLIMIT_CPU, limits["cpu_time"], limits["cpu_time"] + 1)
+    if limits.get("open_files", 0) > 0:
+        set_limit(resource.RLIMIT_NOFILE, limits["open_files"], limits["open_files"])
+    if limits.get("processes", 0) > 0 and hasattr(resource, "RLIMIT_NPROC"):
+        set_limit(resource.RLIMIT_NPROC, limits["processes"], limits["processes"])
+    if limits.get("output", 0) > 0:
+        output = limits["output"] * 1024
+        set_limit(resource.RLIMIT_FSIZE, output, output)
+
+
+def get_output_limit(limits):
+    """ returns limit of output in bytes or None"""
+    if limits and limits.get("output", 0) > 0:
+        return limits["output"] * 1024
+    return None
+
+
+def exceeded_limit(limits, status, rusage, error_tail, output_exceeded):
+    """ returns message about limit process exceeded or None"""
+    if not limits:
+        return None
+    signaled = os.WIFSIGNALED(status)
+    signum = os.WTERMSIG(status) if signaled else None
+    if output_exceeded or (signaled and signum == getattr(signal, "SIGXFSZ", None)):
+        return OUTPUT_LIMIT_EXCEEDED
+    if limits.get("cpu_time", 0) > 0:
+        if signaled and signum == getattr(signal, "SIGXCPU", None):
+            return CPU_LIMIT_EXCEEDED
+        if rusage is not None and rusage.ru_utime + rusage.ru_stime >= limits["cpu_time"]:
+            return CPU_LIMIT_EXCEEDED
+    if limits.get("memory", 0) > 0 and (b"MemoryError" in error_tail or b"Cannot allocate memory" in error_tail):
+        return MEMORY_LIMIT_EXCEEDED
+    if limits.get("open_files", 0) > 0 and b"Too many open files" in error_tail:
+        return OPEN_FILES_LIMIT_EXCEEDED
+    if limits.get("processes", 0) > 0 and b"Resource temporarily unavailable" in error_tail:
+        return PROCESSES_LIMIT_EXCEEDED
+    return None
+
+
+def write_all(fd, data):
+    while data:
+        written = os.write(fd, data)
+        data = data[written:]
+
+
+def kill_group(pid):
+    try:
+        os.killpg(pid, signal.SIGKILL)
+    except OSError:
+        pass
+
+
+def run(limits, args):
+    """ runs command, forwards its output until output limit and returns exit code"""
+
+    def prepare():
+        os.setpgid(0, 0)
+        apply_limits(limits)
+
+    process = subprocess.Popen(args, stdout=subprocess.PIPE, stderr=subprocess.PIPE, preexec_fn=prepare)
+
+    def terminate(signum, frame):
+        kill_group(process.pid)
+        os._exit(1)
+
+    signal.signal(signal.SIGTERM, terminate)
+    output_limit = get_output_limit(limits)
+    targets = {process.stdout.fileno(): 1, process.stderr.fileno(): 2}
+    output_size = 0
+    output_exceeded = False
+    error_tail = b""
+    while targets:
+        for fd in select.select(list(targets.keys()), [], [])[0]:
+            data = os.read(fd, CHUNK)
+            if not data:
+                del targets[fd]
+                continue
+            if output_exceeded:
+                continue
+            output_size += len(data)
+            if output_limit is not None and output_size > output_limit:
+                output_exceeded = True
+                kill_group(process.pid)
+                data = data[:len(data) - (output_size - output_limit)]
+            if targets[fd] == 2:
+                error_tail = (error_tail + data)[-ERROR_TAIL:]
+            write_all(targets[fd], data)
+    pid, status, rusage = os.wait4(process.pid, 0)
+    process.returncode = status
+    kill_group(pid)
+    message = exceeded_limit(limits, status, rusage, error_tail, output_exceeded)
+    if message is not None:
+        write_all(2, ("\n" + LIMIT_PREFIX + message + "\n").encode("utf-8"))
+    if os.WIFSIGNALED(status):
+        return 128 + os.WTERMSIG(status)
+    return os.WEXITSTATUS(status)
+
+
+if __name__ == "__main__":
+    sys.exit(run(json.loads(sys.argv[1]), sys.argv[2:]))
@@ -0,0 +1,244 @@
+import json
+import os
+import select
+import signal
+import sys
+import tempfile
+import time
+import traceback
+
+import study_sandbox
+
+READY = "#study_worker ready"
+UNSUPPORTED = "#study_worker unsupported"
+RESPONSE = "#study_worker response "
+OUTPUT = "#study_worker output "
+TIMEOUT = " timeout"
+LIMIT = " limit "
+POLL_INTERVAL = 0.02
+MAX_OUTPUT = 1024 * 1024
+STREAMED_OUTPUT = MAX_OUTPUT // 2
+MAX_ERROR_OUTPUT = 64 * 1024
+
+
+def write_all(data):
+    while data:
+        data = data[os.write(1, data):]
+
+
+def write_line(line):
+    write_all((line + "\n").encode("utf-8"))
+
+
+def preload():
+    """ imports modules which are used by tests, so children don't import them again"""
+    for module in ("runpy", "imp", "test_helper"):
+        try:
+            __import__(module)
+        except Exception:
+            pass
+
+
+def run_child(request, output_fd, error_fd):
+    code = 1
+    try:
+        # streams are redirected first, so nothing child prints gets into responses of worker
+        devnull = os.open(os.devnull, os.O_RDWR)
+        os.dup2(devnull, 0)
+        os.dup2(output_fd, 1)
+        os.dup2(error_fd, 2)
+        os.setpgid(0, 0)
+        signal.signal(signal.SIGTERM, signal.SIG_DFL)
+        study_sandbox.apply_limits(request.get("limits"))
+        os.chdir(request["cwd"])
+        os.environ.update(request.get("env", {}))
+        test = request["test"]
+        sys.argv = [test] + list(request["args"])
+        sys.path[0] = os.path.dirname(os.path.abspath(test))
+        helper = sys.modules.get("test_helper")
+        if helper is not None and hasattr(helper, "start_timer"):
+            helper.start_timer()
+        import runpy
+        runpy.run_path(test, run_name="__main__")
+        code = 0
+    except SystemExit:
+        e = sys.exc_info()[1]
+        if e.code is None:
+            code = 0
+        elif isinstance(e.code, int):
+            code = e.code
+    except BaseException:
+        traceback.print_exc()
+    finally:
+        try:
+            sys.stdout.flush()
+            sys.stderr.flush()
+        finally:
+            os._exit(code)
+
+
+def start_child(request, children):
+    output_fd, output_path = tempfile.mkstemp(prefix="study_worker")
+    error_fd, error_path = tempfile.mkstemp(prefix="study_worker")
+    pid = os.fork()
+    if pid == 0:
+        run_child(request, output_fd, error_fd)
+    try:
+        os.setpgid(pid, pid)
+    except OSError:
+        pass
+    os.close(output_fd)
+    os.close(error_fd)
+    timeout = request.get("timeout")
+    deadline = time.time() + timeout if timeout else None
+    children[pid] = {"id": request["id"], "output": output_path, "error": error_path, "sent": 0,
+                     "deadline": deadline, "timed_out": False, "limits": request.get("limits")}
+
+
+def kill_child(pid):
+    """ kills child together with processes it started"""
+    try:
+        os.killpg(pid, signal.SIGKILL)
+    except OSError:
+        pass
+
+
+def cancel_child(request_id, children):
+    for pid, child in children.items():
+        if child["id"] == request_id:
+            kill_child(pid)
+
+
+def kill_expired_children(children):
+    now = time.time()
+    for pid, child in children.items():
+        if child["deadline"] is not None and now >= child["deadline"] and not child["timed_out"]:
+            child["timed_out"] = True
+            kill_child(pid)
+
+
+def handle_request(request, children):
+    if "cancel" in request:
+        cancel_child(request["cancel"], children)
+    else:
+        start_child(request, children)
+
+
+def read_output(path, limit, start=0):
+    """ reads and removes output file from start position, only head and tail of long output are kept"""
+    output_file = open(path, "rb")
+    try:
+        size = os.fstat(output_file.fileno()).st_size - start
+        output_file.seek(start)
+        if size <= limit:
+            output = output_file.read()
+        else:
+            half = limit // 2
+            head = output_file.read(half)
+            output_file.seek(start + size - half)
+            skipped = "\n... %d bytes skipped ...\n" % (size - 2 * half)
+            output = head + skipped.encode("utf-8") + output_file.read()
+    finally:
+        output_file.close()
+        os.remove(path)
+    if output and not output.endswith(b"\n"):
+        output += b"\n"
+    return output
+
+
+def get_exceeded_limit(child, status, rusage, error_output):
+    """ output of child is written to file, so output limit is enforced by file size limit"""
+    output_limit = study_sandbox.get_output_limit(child["limits"])
+    output_exceeded = output_limit is not None and os.path.getsize(child["output"]) >= output_limit
+    return study_sandbox.exceeded_limit(child["limits"], status, rusage,
+                                        error_output[-study_sandbox.ERROR_TAIL:], output_exceeded)
+
+
+def exit_code(status):
+    if os.WIFEXITED(status):
+        return os.WEXITSTATUS(status)
+    return -os.WTERMSIG(status)
+
+
+def reap_children(children):
+    while children:
+        try:
+            pid, status, rusage = os.wait4(-1, os.WNOHANG)
+        except OSError:
+            return
+        if pid == 0:
+            return
+        if pid not in children:
+            continue
+        child = children.pop(pid)
+        request_id = child["id"]
+        kill_child(pid)
+        error_output = read_output(child["error"], MAX_ERROR_OUTPUT)
+        limit = get_exceeded_limit(child, status, rusage, error_output)
+        output = read_output(child["output"], MAX_OUTPUT - child["sent"], child["sent"])
+        suffix = ""
+        if child["timed_out"]:
+            suffix = TIMEOUT
+        elif limit is not None:
+            suffix = LIMIT + limit
+        # outputs are framed by their sizes, so tests can't end response or forge another one by printing
+        header = "%s%d %d %d %d%s\n" % (RESPONSE, request_id, exit_code(status), len(output), len(error_output), suffix)
+        write_all(header.encode("utf-8") + output + error_output)
+
+
+def send_output(children):
+    """ sends complete lines children printed since previous call, so results of tests are known while tests are running.
+    Only head of output is sent, the rest is sent in response"""
+    for child in children.values():
+        if child["sent"] >= STREAMED_OUTPUT or os.path.getsize(child["output"]) <= child["sent"]:
+            continue
+        output_file = open(child["output"], "rb")
+        try:
+            output_file.seek(child["sent"])
+            output = output_file.read(STREAMED_OUTPUT - child["sent"])
+        finally:
+            output_file.close()
+        size = output.rfind(b"\n") + 1
+        if size > 0:
+            child["sent"] += size
+            write_all(("%s%d %d\n" % (OUTPUT, child["id"], size)).encode("utf-8") + output[:size])
+
+
+def serve():
+    children = {}
+
+    def terminate(signum, frame):
+        for pid in list(children.keys()):
+            kill_child(pid)
+        os._exit(0)
+
+    signal.signal(signal.SIGTERM, terminate)
+    buffer = b""
+    stdin_open = True
+    while stdin_open or children:
+        if stdin_open:
+            timeout = POLL_INTERVAL if children else None
+            readable = select.select([0], [], [], timeout)[0]
+            if readable:
+                data = os.read(0, 65536)
+                if not data:
+                    stdin_open = False
+                buffer += data
+                while b"\n" in buffer:
+                    line, buffer = buffer.split(b"\n", 1)
+                    if line.strip():
+                        handle_request(json.loads(line.decode("utf-8")), children)
+        else:
+            time.sleep(POLL_INTERVAL)
+        kill_expired_children(children)
+        send_output(children)
+        reap_children(children)
+
+
+if __name__ == "__main__":
+    preload()
+    if not hasattr(os, "fork"):
+        write_line(UNSUPPORTED)
+    else:
+        write_line(READY)
+        serve()
@@ -0,0 +1,522 @@
+package ru.compscicenter.edide;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.GsonBuilder;
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.openapi.util.JDOMUtil;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.xmlb.XmlSerializer;
+import org.jdom.Element;
+import org.jdom.JDOMException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.compscicenter.edide.course.*;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Command line grader which checks exported projects of students without IDE.
+ * Course is loaded from course.json, positions of task windows are taken from
+ * study_project.xml of student and every task file is checked by {@link ru.compscicenter.edide.StudyChecker}
+ * against tests of original course. Identical submissions are graded once, see {@link ru.compscicenter.edide.StudyGradingCache}.
+ * Summary is written in csv or json format.
+ * <p/>
+ * Usage: StudyBatchGrader --course &lt;course dir&gt; [--python &lt;interpreter&gt;] [--threads N]
+ * [--output &lt;file.csv|file.json&gt;] &lt;project dir&gt;...
+ */
+public class StudyBatchGrader {
+  public static final String COURSE_FILE = "course.json";
+  public static final String PROJECT_STATE_FILE = FileUtil.join(".idea", "study_project.xml");
+  public static final String SOLVED = "Solved";
+  public static final String FAILED = "Failed";
+  public static final String MISSING = "Missing";
+  public static final String ERROR = "Error";
+  private static final String STATE_COMPONENT = "StudySettings";
+  private final Course myCourse;
+  private final File myCourseDir;
+  private final String myPythonPath;
+  private StudyTestWorker myWorker = null;
+  private final StudyGradingCache myGradingCache;
+
+  /**
+   * Result of check of one task file of student
+   */
+  public static class TaskResult {
+    public String project;
+    public int lesson;
+    public int task;
+    public String file;
+    public String status;
+    public String message;
+    public long durationMs;
+    /**
+     * Verdict was taken from identical submission
+     */
+    public boolean cached;
+    public List<WindowResult> windows = new ArrayList<WindowResult>();
+  }
+
+  public static class WindowResult {
+    public int index;
+    public String status;
+
+    WindowResult(int index, @NotNull final String status) {
+      this.index = index;
+      this.status = status;
+    }
+  }
+
+  /**
+   * @param courseDir  directory with course.json, tests and test helper of course
+   * @param pythonPath interpreter tests are run with
+   */
+  public StudyBatchGrader(@NotNull final File courseDir, @NotNull final String pythonPath) throws IOException {
+    this(courseDir, pythonPath, new StudyGradingCache());
+  }
+
+  /**
+   * @param gradingCache verdicts of identical submissions
+   */
+  public StudyBatchGrader(@NotNull final File courseDir, @NotNull final String pythonPath,
+                          @NotNull final StudyGradingCache gradingCache) throws IOException {
+    myCourseDir = courseDir;
+    myGradingCache = gradingCache;
+    myPythonPath = pythonPath;
+    myCourse = loadCourse(new File(courseDir, COURSE_FILE));
+  }
+
+  /**
+   * Starts warm worker which runs tests of projects graded by {@link ru.compscicenter.edide.StudyBatchGrader#grade(File)}
+   */
+  public void startWorker() {
+    myWorker = StudyTestWorker.start(myPythonPath, myCourseDir.getPath());
+  }
+
+  /**
+   * @return worker compatible with this grader or null if it can't be started
+   */
+  @Nullable
+  public StudyTestWorker createWorker() {
+    return StudyTestWorker.start(myPythonPath, myCourseDir.getPath());
+  }
+
+  @NotNull
+  public Course getCourse() {
+    return myCourse;
+  }
+
+  @NotNull
+  public File getCourseDir() {
+    return myCourseDir;
+  }
+
+  /**
+   * @param lesson number of lesson starting from 1
+   * @param task   number of task in lesson starting from 1
+   */
+  @Nullable
+  public Task findTask(int lesson, int task) {
+    List<Lesson> lessons = myCourse.getLessons();
+    if (lesson < 1 || lesson > lessons.size()) {
+      return null;
+    }
+    List<Task> tasks = lessons.get(lesson - 1).getTaskList();
+    return task >= 1 && task <= tasks.size() ? tasks.get(task - 1) : null;
+  }
+
+  @NotNull
+  static Course loadCourse(@NotNull final File courseFile) throws IOException {
+    Course course = readCourse(courseFile);
+    course.init(false);
+    course.setResourcePath(courseFile.getAbsolutePath());
+    List<Lesson> lessons = course.getLessons();
+    for (int i = 0; i < lessons.size(); i++) {
+      lessons.get(i).setIndex(i);
+      List<Task> tasks = lessons.get(i).getTaskList();
+      for (int j = 0; j < tasks.size(); j++) {
+        tasks.get(j).setIndex(j);
+      }
+    }
+    return course;
+  }
+
+  /**
+   * Reads course.json without initialization, so windows are kept in order they are listed in
+   */
+  @NotNull
+  static Course readCourse(@NotNull final File courseFile) throws IOException {
+    Reader reader = new InputStreamReader(new FileInputStream(courseFile), Charset.forName("UTF-8"));
+    try {
+      Course course = new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES).create()
+        .fromJson(reader, Course.class);
+      if (course == null) {
+        throw new IOException("course file is empty");
+      }
+      return course;
+    }
+    finally {
+      StudyUtils.closeSilently(reader);
+    }
+  }
+
+  /**
+   * @return course saved in study_project.xml of student or null if it can't be read
+   */
+  @Nullable
+  private static Course loadProjectState(@NotNull final File projectDir) {
+    File stateFile = new File(projectDir, PROJECT_STATE_FILE);
+    if (!stateFile.exists()) {
+      return null;
+    }
+    try {
+      Element root = JDOMUtil.loadDocument(stateFile).getRootElement();
+      for (Object child : root.getChildren("component")) {
+        Element component = (Element)child;
+        Element courseElement = component.getChild(StudyTaskManager.COURSE_ELEMENT);
+        if (STATE_COMPONENT.equals(component.getAttributeValue("name")) && courseElement != null) {
+          Course course = XmlSerializer.deserialize(courseElement, Course.class);
+          if (course != null) {
+            course.init(true);
+          }
+          return course;
+        }
+      }
+    }
+    catch (JDOMException e) {
+      System.err.println(stateFile.getPath() + ": " + e.getMessage());
+    }
+    catch (IOException e) {
+      System.err.println(stateFile.getPath() + ": " + e.getMessage());
+    }
+    return null;
+  }
+
+  @NotNull
+  public StudyGradingCache getGradingCache() {
+    return myGradingCache;
+  }
+
+  public void dispose() {
+    if (myWorker != null) {
+      myWorker.stop();
+    }
+  }
+
+  /**
+   * Checks all the task files of course in project of student
+   */
+  @NotNull
+  public List<TaskResult> grade(@NotNull final File projectDir) {
+    Course state = loadProjectState(projectDir);
+    List<TaskResult> results = new ArrayList<TaskResult>();
+    for (Lesson lesson : myCourse.getLessons()) {
+      for (Task task : lesson.getTaskList()) {
+        for (Map.Entry<String, TaskFile> entry : task.getTaskFiles().entrySet()) {
+          TaskFile stateTaskFile = findTaskFile(state, lesson.getIndex(), task.getIndex(), entry.getKey());
+          results.add(grade(projectDir, task, entry.getKey(), stateTaskFile));
+        }
+      }
+    }
+    return results;
+  }
+
+  @Nullable
+  private static TaskFile findTaskFile(@Nullable final Course state, int lessonIndex, int taskIndex, @NotNull final String name) {
+    if (state == null || lessonIndex >= state.getLessons().size()) {
+      return null;
+    }
+    List<Task> tasks = state.getLessons().get(lessonIndex).getTaskList();
+    return taskIndex < tasks.size() ? tasks.get(taskIndex).getFile(name) : null;
+  }
+
+  @NotNull
+  private TaskResult grade(@NotNull final File projectDir, @NotNull final Task task, @NotNull final String fileName,
+                           @Nullable final TaskFile stateTaskFile) {
+    File taskDir = new File(projectDir, task.getTaskDirPath());
+    File studentFile = new File(taskDir, fileName);
+    TaskResult result;
+    if (studentFile.exists() && stateTaskFile == null) {
+      // windows may have been moved by student, so they can't be checked at their initial positions
+      result = createResult(task, fileName);
+      result.status = ERROR;
+      result.message = "positions of task windows aren't found in " + PROJECT_STATE_FILE;
+    }
+    else if (studentFile.exists()) {
+      try {
+        result = check(task, fileName, FileUtil.loadFile(studentFile), stateTaskFile, taskDir, myWorker);
+      }
+      catch (IOException e) {
+        result = createResult(task, fileName);
+        result.status = ERROR;
+        result.message = e.getMessage();
+      }
+    }
+    else {
+      result = createResult(task, fileName);
+      result.status = MISSING;
+    }
+    result.project = projectDir.getPath();
+    return result;
+  }
+
+  private static TaskResult createResult(@NotNull final Task task, @NotNull final String fileName) {
+    TaskResult result = new TaskResult();
+    result.lesson = task.getLesson().getIndex() + 1;
+    result.task = task.getIndex() + 1;
+    result.file = fileName;
+    return result;
+  }
+
+  /**
+   * Checks text of task file submitted by student
+   *
+   * @param stateTaskFile task file with positions of windows in submitted text, initial positions are used if it's null.
+   *                      Result is error if it has other number of windows than task file of course
+   * @param workDir       directory tests are run in
+   * @param worker        warm worker tests are run on, new processes are started if it's null
+   */
+  @NotNull
+  public TaskResult check(@NotNull final Task task, @NotNull final String fileName, @NotNull final String text,
+                          @Nullable final TaskFile stateTaskFile, @NotNull final File workDir,
+                          @Nullable final StudyTestWorker worker) {
+    String taskDirPath = task.getTaskDirPath();
+    TaskResult result = createResult(task, fileName);
+    TaskFile taskFile = task.getFile(fileName);
+    if (taskFile == null) {
+      result.status = MISSING;
+      return result;
+    }
+    long start = System.currentTimeMillis();
+    try {
+      TaskFile positionedTaskFile = getPositionedTaskFile(taskFile, stateTaskFile);
+      final StudyFileSnapshot snapshot = StudyFileSnapshot.create(text, positionedTaskFile);
+      final GeneralCommandLine commandLine = createTestCommandLine(task, fileName, workDir);
+      File testsFile = new File(commandLine.getParametersList().get(0));
+      final long timeLimit = StudyProcessManager.getTimeLimit(myCourse);
+      final ResourceLimits limits = StudyProcessManager.getLimits(myCourse, task);
+      final StudyChecker.TestRunner testRunner = new StudyChecker.TestRunner() {
+        @NotNull
+        @Override
+        public StudyTestRunner.Outcome runTests(@NotNull final GeneralCommandLine commandLine,
+                                                @Nullable final StudyTestRunner.TestResultListener listener)
+          throws ExecutionException {
+          return StudyTestRunner.runTests(commandLine, listener, timeLimit, limits, worker);
+        }
+
+        @NotNull
+        @Override
+        public String getLimitsKey() {
+          return StudyCheckCache.getLimitsKey(timeLimit, limits);
+        }
+      };
+      final StudyChecker checker = new StudyChecker(snapshot, fileName, taskDirPath, commandLine, testRunner,
+                                                    new StudyCheckCache(), StudyUtils.getCheckExecutor());
+      String key = StudyGradingCache.getKey(snapshot, FileUtil.join(taskDirPath, fileName), FileUtil.loadFile(testsFile),
+                                            StudyCheckCache.getTaskFilesKey(workDir, fileName), myPythonPath);
+      final boolean[] graded = new boolean[1];
+      StudyCheckCache.Result checkResult = myGradingCache.grade(key, new Callable<StudyCheckCache.Result>() {
+        @Override
+        public StudyCheckCache.Result call() throws Exception {
+          graded[0] = true;
+          return checker.check(null);
+        }
+      });
+      result.cached = !graded[0];
+      boolean passed = checkResult.getFailedMessage().equals(StudyTestRunner.TEST_OK);
+      result.status = passed ? SOLVED : FAILED;
+      result.message = passed ? null : checkResult.getFailedMessage();
+      for (StudyFileSnapshot.Window window : snapshot.getWindows()) {
+        int index = window.getTaskWindow().getIndex();
+        StudyStatus status = passed ? StudyStatus.Solved : checkResult.getWindowStatus(index);
+        result.windows.add(new WindowResult(index, status != null ? status.toString() : StudyStatus.Unchecked.toString()));
+      }
+    }
+    catch (IOException e) {
+      result.status = ERROR;
+      result.message = e.getMessage();
+    }
+    catch (java.util.concurrent.ExecutionException e) {
+      result.status = ERROR;
+      result.message = String.valueOf(e.getCause());
+    }
+    result.durationMs = System.currentTimeMillis() - start;
+    return result;
+  }
+
+  /**
+   * @param workDir directory tests are run in, checked file is expected to be there
+   * @return command line which runs tests of task with interpreter of grader,
+   * test helper is imported from course directory
+   */
+  @NotNull
+  public GeneralCommandLine createTestCommandLine(@NotNull final Task task, @NotNull final String fileName, @NotNull final File workDir) {
+    GeneralCommandLine commandLine = new GeneralCommandLine();
+    commandLine.setExePath(myPythonPath);
+    commandLine.setWorkDirectory(workDir);
+    commandLine.getEnvironment().put(StudyTestRunner.PYTHONPATH, myCourseDir.getPath());
+    commandLine.addParameter(FileUtil.join(myCourseDir.getPath(), task.getTaskDirPath(), task.getTestFile()));
+    commandLine.addParameter(myCourseDir.getPath());
+    commandLine.addParameter(new File(workDir, fileName).getPath());
+    return commandLine;
+  }
+
+  /**
+   * @return task file of course with windows moved to positions saved in state of student
+   * @throws IOException if state of student doesn't match task file of course
+   */
+  @NotNull
+  private static TaskFile getPositionedTaskFile(@NotNull final TaskFile taskFile, @Nullable final TaskFile stateTaskFile)
+    throws IOException {
+    if (stateTaskFile == null) {
+      return taskFile;
+    }
+    if (stateTaskFile.getTaskWindows().size() != taskFile.getTaskWindows().size()) {
+      throw new IOException("task file has " + taskFile.getTaskWindows().size() + " windows, positions of " +
+                            stateTaskFile.getTaskWindows().size() + " are saved in " + PROJECT_STATE_FILE);
+    }
+    TaskFile positioned = new TaskFile();
+    for (int i = 0; i < taskFile.getTaskWindows().size(); i++) {
+      TaskWindow courseWindow = taskFile.getTaskWindows().get(i);
+      TaskWindow stateWindow = stateTaskFile.getTaskWindows().get(i);
+      TaskWindow window = new TaskWindow();
+      window.setLine(stateWindow.getLine());
+      window.setStart(stateWindow.getStart());
+      window.setLength(stateWindow.getLength());
+      window.setPossibleAnswer(courseWindow.getPossibleAnswer());
+      window.setIndex(courseWindow.getIndex());
+      positioned.getTaskWindows().add(window);
+    }
+    return positioned;
+  }
+
+  public static void writeCsv(@NotNull final List<TaskResult> results, @NotNull final Writer writer) throws IOException {
+    writer.write("project,lesson,task,file,window,status,message,duration_ms,cached\n");
+    for (TaskResult result : results) {
+      writeCsvRow(writer, result.project, String.valueOf(result.lesson), String.valueOf(result.task), result.file, "",
+                  result.status, result.message, String.valueOf(result.durationMs), String.valueOf(result.cached));
+      for (WindowResult window : result.windows) {
+        writeCsvRow(writer, result.project, String.valueOf(result.lesson), String.valueOf(result.task), result.file,
+                    String.valueOf(window.index), window.status, "", "", "");
+      }
+    }
+  }
+
+  private static void writeCsvRow(@NotNull final Writer writer, String... values) throws IOException {
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0) {
+        writer.write(",");
+      }
+      String value = values[i] != null ? values[i] : "";
+      if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+        value = "\"" + value.replace("\"", "\"\"") + "\"";
+      }
+      writer.write(value);
+    }
+    writer.write("\n");
+  }
+
+  public static void writeJson(@NotNull final List<TaskResult> results, @NotNull final Writer writer) throws IOException {
+    new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES).setPrettyPrinting().create()
+      .toJson(results, writer);
+    writer.write("\n");
+  }
+
+  private static void printUsage() {
+    System.err.println("Usage: StudyBatchGrader --course <course dir> [--python <interpreter>] [--threads N] " +
+                       "[--output <file.csv|file.json>] <project dir>...");
+  }
+
+  public static void main(String[] args) throws Exception {
+    File courseDir = null;
+    String pythonPath = "python";
+    int threads = Runtime.getRuntime().availableProcessors();
+    String output = null;
+    List<File> projects = new ArrayList<File>();
+    try {
+      for (int i = 0; i < args.length; i++) {
+        if (args[i].equals("--course")) {
+          courseDir = new File(args[++i]);
+        }
+        else if (args[i].equals("--python")) {
+          pythonPath = args[++i];
+        }
+        else if (args[i].equals("--threads")) {
+          threads = Math.max(1, Integer.parseInt(args[++i]));
+        }
+        else if (args[i].equals("--output")) {
+          output = args[++i];
+        }
+        else {
+          projects.add(new File(args[i]));
+        }
+      }
+    }
+    catch (ArrayIndexOutOfBoundsException e) {
+      courseDir = null;
+    }
+    catch (NumberFormatException e) {
+      courseDir = null;
+    }
+    if (courseDir == null || projects.isEmpty()) {
+      printUsage();
+      System.exit(2);
+    }
+    if (System.getProperty(StudyUtils.CHECK_THREADS_PROPERTY) == null) {
+      System.setProperty(StudyUtils.CHECK_THREADS_PROPERTY, String.valueOf(threads));
+    }
+
+    final StudyBatchGrader grader = new StudyBatchGrader(courseDir, pythonPath);
+    grader.startWorker();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<TaskResult> results = new ArrayList<TaskResult>();
+    try {
+      List<Future<List<TaskResult>>> projectResults = new ArrayList<Future<List<TaskResult>>>();
+      for (final File project : projects) {
+        projectResults.add(executor.submit(new Callable<List<TaskResult>>() {
+          @Override
+          public List<TaskResult> call() {
+            return grader.grade(project);
+          }
+        }));
+      }
+      for (int i = 0; i < projects.size(); i++) {
+        results.addAll(projectResults.get(i).get());
+        System.err.println("graded " + projects.get(i).getPath());
+      }
+    }
+    finally {
+      executor.shutdownNow();
+      grader.dispose();
+    }
+    StudyGradingCache gradingCache = grader.getGradingCache();
+    System.err.println("grading cache: " + gradingCache.getHits() + " hits, " + gradingCache.getMisses() + " misses");
+
+    Writer writer = output != null
+                    ? new OutputStreamWriter(new FileOutputStream(output), Charset.forName("UTF-8"))
+                    : new OutputStreamWriter(System.out, Charset.forName("UTF-8"));
+    try {
+      if (output != null && output.endsWith(".json")) {
+        writeJson(results, writer);
+      }
+      else {
+        writeCsv(results, writer);
+      }
+    }
+    finally {
+      writer.flush();
+      if (output != null) {
+        writer.close();
+      }
+    }
+    System.exit(0);
+  }
+}
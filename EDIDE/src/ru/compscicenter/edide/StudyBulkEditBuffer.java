@@ -0,0 +1,77 @@
+package ru.compscicenter.edide;
+
+/**
+ * Offsets of task windows which are moved by changes of document during bulk update.
+ * Changes are applied to plain offsets without looking into document, lines and starts
+ * of windows are computed from offsets once when bulk update is finished.
+ * Windows are expected to be sorted by their positions and not to overlap.
+ */
+public class StudyBulkEditBuffer {
+  private final int[] myStarts;
+  private final int[] myEnds;
+  private int myChangeCount = 0;
+
+  /**
+   * @param starts start offsets of windows
+   * @param ends   end offsets of windows
+   */
+  public StudyBulkEditBuffer(int[] starts, int[] ends) {
+    myStarts = starts.clone();
+    myEnds = ends.clone();
+  }
+
+  /**
+   * Moves windows as {@link ru.compscicenter.edide.StudyDocumentListener} does for single change:
+   * the first window containing offset of change is resized, windows after changed fragment are shifted
+   * and windows starting inside removed fragment are moved to the end of inserted one.
+   *
+   * @param offset    offset of changed fragment
+   * @param oldLength length of removed fragment
+   * @param newLength length of inserted fragment
+   */
+  public void change(int offset, int oldLength, int newLength) {
+    myChangeCount++;
+    int delta = newLength - oldLength;
+    int oldEnd = offset + oldLength;
+    int first = findFirstEndingAfter(offset);
+    int from = first;
+    if (first < myStarts.length && myStarts[first] <= offset) {
+      myEnds[first] = Math.max(myStarts[first], myEnds[first] + delta);
+      from = first + 1;
+    }
+    for (int i = from; i < myStarts.length; i++) {
+      myStarts[i] = myStarts[i] >= oldEnd ? myStarts[i] + delta : offset + newLength;
+      myEnds[i] = Math.max(myStarts[i], myEnds[i] >= oldEnd ? myEnds[i] + delta : offset + newLength);
+    }
+  }
+
+  /**
+   * @return index of the first window which ends at offset or after it
+   */
+  private int findFirstEndingAfter(int offset) {
+    int low = 0;
+    int high = myEnds.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (myEnds[middle] < offset) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  public int getStart(int index) {
+    return myStarts[index];
+  }
+
+  public int getEnd(int index) {
+    return myEnds[index];
+  }
+
+  public int getChangeCount() {
+    return myChangeCount;
+  }
+}
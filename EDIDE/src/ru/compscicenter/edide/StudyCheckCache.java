@@ -0,0 +1,282 @@
+package ru.compscicenter.edide;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.compscicenter.edide.course.ResourceLimits;
+import ru.compscicenter.edide.course.StudyStatus;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Results of checks keyed by hash of everything check depends on: checked text, task windows,
+ * tests, test helper, other files of task, limits and interpreter. Identical re-check takes result from cache instead of running tests.
+ * Results of checks of separate task windows are kept too, so after editing one window
+ * only this window is checked again. Least recently used results are evicted when cache is full.
+ */
+public class StudyCheckCache {
+  private static final Logger LOG = Logger.getInstance(StudyCheckCache.class.getName());
+  /**
+   * System property with maximum number of cached results
+   */
+  public static final String CACHE_SIZE_PROPERTY = "study.check.cache.size";
+  /**
+   * System property which turns off saving cache in project config directory
+   */
+  public static final String CACHE_PERSISTENT_PROPERTY = "study.check.cache.persistent";
+  public static final String CACHE_FILE = "study_check_cache.json";
+  private static final int DEFAULT_CACHE_SIZE = 200;
+  private final int myMaxSize;
+  private final LinkedHashMap<String, Result> myResults;
+
+  public static class Result {
+    private final String myFailedMessage;
+    private final String myErrorOutput;
+    private final Map<Integer, StudyStatus> myWindowStatuses;
+
+    public Result(@NotNull final String failedMessage, @NotNull final Map<Integer, StudyStatus> windowStatuses) {
+      this(failedMessage, null, windowStatuses);
+    }
+
+    /**
+     * @param failedMessage  {@link ru.compscicenter.edide.StudyTestRunner#TEST_OK} or message of the first failed test
+     * @param errorOutput    captured stderr of tests
+     * @param windowStatuses statuses of task windows by their indexes
+     */
+    public Result(@NotNull final String failedMessage, @Nullable final String errorOutput,
+                  @NotNull final Map<Integer, StudyStatus> windowStatuses) {
+      myFailedMessage = failedMessage;
+      myErrorOutput = errorOutput;
+      myWindowStatuses = new HashMap<Integer, StudyStatus>(windowStatuses);
+    }
+
+    public String getFailedMessage() {
+      return myFailedMessage;
+    }
+
+    @Nullable
+    public String getErrorOutput() {
+      return myErrorOutput;
+    }
+
+    @Nullable
+    public StudyStatus getWindowStatus(int windowIndex) {
+      return myWindowStatuses.get(windowIndex);
+    }
+  }
+
+  private static class CacheEntry {
+    private String key;
+    private String failedMessage;
+    private String errorOutput;
+    private Map<Integer, StudyStatus> windowStatuses;
+  }
+
+  public StudyCheckCache() {
+    this(Integer.getInteger(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE));
+  }
+
+  public StudyCheckCache(int maxSize) {
+    myMaxSize = Math.max(0, maxSize);
+    myResults = new LinkedHashMap<String, Result>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+        return size() > myMaxSize;
+      }
+    };
+  }
+
+  public static boolean isPersistent() {
+    String persistent = System.getProperty(CACHE_PERSISTENT_PROPERTY);
+    return persistent == null || Boolean.parseBoolean(persistent);
+  }
+
+  /**
+   * @param timeLimit time limit in milliseconds
+   * @return key of limits tests are run with
+   */
+  @NotNull
+  public static String getLimitsKey(long timeLimit, @NotNull final ResourceLimits limits) {
+    return timeLimit + " " + StudyProcessManager.toJson(limits);
+  }
+
+  /**
+   * Tests are run in task directory, so they may read its other files such as input data or modules imported by solution
+   *
+   * @param taskDir         directory tests are run in or null if it's unknown
+   * @param checkedFileName name of checked file, its text is passed to tests from snapshot instead
+   * @return key of files in task directory
+   */
+  @NotNull
+  public static String getTaskFilesKey(@Nullable final File taskDir, @NotNull final String checkedFileName) throws IOException {
+    List<String> parts = new ArrayList<String>();
+    parts.add("files");
+    File[] files = taskDir != null ? taskDir.listFiles() : null;
+    if (files != null) {
+      Arrays.sort(files);
+      for (File file : files) {
+        String name = file.getName();
+        if (file.isFile() && !name.equals(checkedFileName) && !name.endsWith(".pyc")) {
+          parts.add(name);
+          parts.add(toHex(getDigest().digest(FileUtil.loadFileBytes(file))));
+        }
+      }
+    }
+    return hash(parts);
+  }
+
+  /**
+   * @param taskPath        path of checked file relative to course, such as "lesson1/task2/file.py"
+   * @param testsText       text of tests.py of task
+   * @param testHelperText  text of test_helper.py of course or null if there is no test helper
+   * @param taskFilesKey    key created by {@link #getTaskFilesKey}
+   * @param limitsKey       key created by {@link #getLimitsKey}
+   * @param interpreterPath path to python interpreter which runs tests
+   * @return key of check result
+   */
+  @NotNull
+  public static String getKey(@NotNull final StudyFileSnapshot snapshot, @NotNull final String taskPath,
+                              @NotNull final String testsText, @Nullable final String testHelperText,
+                              @NotNull final String taskFilesKey, @NotNull final String limitsKey,
+                              @NotNull final String interpreterPath) {
+    List<String> parts = new ArrayList<String>();
+    Collections.addAll(parts, "file", taskPath, interpreterPath, testsText, String.valueOf(testHelperText), taskFilesKey,
+                       limitsKey, snapshot.getUserVariant().getText());
+    for (StudyFileSnapshot.Window window : snapshot.getWindows()) {
+      parts.add(window.getTaskWindow().getIndex() + ":" + window.getStartOffset() + ":" + window.getLength());
+      parts.add(window.getPossibleAnswer());
+    }
+    return hash(parts);
+  }
+
+  /**
+   * Key of check of one task window. It depends only on what tests get: text where other windows
+   * contain possible answers and texts of windows, so it's the same while neither this window
+   * nor the rest of file is changed.
+   *
+   * @param variant variant built by {@link ru.compscicenter.edide.StudyFileSnapshot#getVariantWithUserWindow}
+   */
+  @NotNull
+  public static String getWindowKey(@NotNull final StudyFileSnapshot.Variant variant, int windowIndex, @NotNull final String taskPath,
+                                    @NotNull final String testsText, @Nullable final String testHelperText,
+                                    @NotNull final String taskFilesKey, @NotNull final String limitsKey,
+                                    @NotNull final String interpreterPath) {
+    List<String> parts = new ArrayList<String>();
+    Collections.addAll(parts, "window", Integer.toString(windowIndex), taskPath, interpreterPath, testsText,
+                       String.valueOf(testHelperText), taskFilesKey, limitsKey, variant.getText());
+    parts.addAll(variant.getWindowTexts());
+    return hash(parts);
+  }
+
+  static String hash(@NotNull final List<String> parts) {
+    MessageDigest digest = getDigest();
+    for (String part : parts) {
+      update(digest, part);
+    }
+    return toHex(digest.digest());
+  }
+
+  @NotNull
+  private static MessageDigest getDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @NotNull
+  private static String toHex(@NotNull final byte[] bytes) {
+    StringBuilder hex = new StringBuilder();
+    for (byte b : bytes) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+  private static void update(@NotNull final MessageDigest digest, @NotNull final String text) {
+    try {
+      byte[] bytes = text.getBytes("UTF-8");
+      digest.update(Integer.toString(bytes.length).getBytes("UTF-8"));
+      digest.update((byte)0);
+      digest.update(bytes);
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Nullable
+  public synchronized Result get(@NotNull final String key) {
+    return myResults.get(key);
+  }
+
+  public synchronized void put(@NotNull final String key, @NotNull final Result result) {
+    myResults.put(key, result);
+  }
+
+  public synchronized int size() {
+    return myResults.size();
+  }
+
+  public synchronized void clear() {
+    myResults.clear();
+  }
+
+  /**
+   * Loads results saved by {@link ru.compscicenter.edide.StudyCheckCache#save(java.io.File)}, invalid file is ignored
+   */
+  public synchronized void load(@NotNull final File file) {
+    if (!file.exists()) {
+      return;
+    }
+    try {
+      List<CacheEntry> entries = new Gson().fromJson(FileUtil.loadFile(file), new TypeToken<List<CacheEntry>>() {}.getType());
+      if (entries == null) {
+        return;
+      }
+      for (CacheEntry entry : entries) {
+        if (entry.key != null && entry.failedMessage != null && entry.windowStatuses != null) {
+          myResults.put(entry.key, new Result(entry.failedMessage, entry.errorOutput, entry.windowStatuses));
+        }
+      }
+    }
+    catch (IOException e) {
+      LOG.info(e);
+    }
+    catch (JsonParseException e) {
+      LOG.info(e);
+    }
+  }
+
+  /**
+   * Saves results in order of their usage, so it's restored on load
+   */
+  public synchronized void save(@NotNull final File file) {
+    List<CacheEntry> entries = new ArrayList<CacheEntry>(myResults.size());
+    for (Map.Entry<String, Result> result : myResults.entrySet()) {
+      CacheEntry entry = new CacheEntry();
+      entry.key = result.getKey();
+      entry.failedMessage = result.getValue().myFailedMessage;
+      entry.errorOutput = result.getValue().myErrorOutput;
+      entry.windowStatuses = result.getValue().myWindowStatuses;
+      entries.add(entry);
+    }
+    try {
+      FileUtil.writeToFile(file, new Gson().toJson(entries));
+    }
+    catch (IOException e) {
+      LOG.info(e);
+    }
+  }
+}
@@ -0,0 +1,258 @@
+package ru.compscicenter.edide;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.compscicenter.edide.course.StudyStatus;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks snapshot of task file: runs tests against text typed by user and if they fail
+ * finds out which windows are solved with {@link ru.compscicenter.edide.StudyWindowLocalizer}.
+ * Checked texts are written to temporary directory outside of project.
+ * Tests aren't run if result of the same check is in {@link ru.compscicenter.edide.StudyCheckCache},
+ * windows are checked again only if they or the rest of file were changed since their last check.
+ * It doesn't depend on open project, so it's used both by check action and by batch grader.
+ */
+public class StudyChecker {
+  private static final String USER_VARIANT = "user";
+  private static final String WINDOW_VARIANT = "window";
+  private final StudyFileSnapshot mySnapshot;
+  private final String myFileName;
+  private final String myTaskDirPath;
+  private final GeneralCommandLine myTestCommandLine;
+  private final TestRunner myTestRunner;
+  private final StudyCheckCache myCache;
+  private final ExecutorService myExecutor;
+  private final AtomicInteger myVariantCount = new AtomicInteger();
+  private String myTaskPath;
+  private String myTestsText;
+  private String myTestHelperText;
+  private String myTaskFilesKey;
+  private String myLimitsKey;
+  private boolean myLegacyTestHelper;
+
+  /**
+   * Runs tests described by command line and waits for their outcome
+   */
+  public interface TestRunner {
+    @NotNull
+    StudyTestRunner.Outcome runTests(@NotNull final GeneralCommandLine commandLine,
+                                     @Nullable final StudyTestRunner.TestResultListener listener) throws ExecutionException;
+
+    /**
+     * @return key of limits tests are run with created by {@link ru.compscicenter.edide.StudyCheckCache#getLimitsKey}
+     */
+    @NotNull
+    String getLimitsKey();
+  }
+
+  /**
+   * @param fileName        name of checked task file
+   * @param taskDirPath     "lessonX/taskY" path of task directory relative to course root
+   * @param testCommandLine command line created by {@link ru.compscicenter.edide.StudyTestRunner#createCommandLine},
+   *                        its first parameter is path to tests of task
+   * @param executor        executor tests are run on
+   */
+  public StudyChecker(@NotNull final StudyFileSnapshot snapshot,
+                      @NotNull final String fileName,
+                      @NotNull final String taskDirPath,
+                      @NotNull final GeneralCommandLine testCommandLine,
+                      @NotNull final TestRunner testRunner,
+                      @NotNull final StudyCheckCache cache,
+                      @NotNull final ExecutorService executor) {
+    mySnapshot = snapshot;
+    myFileName = fileName;
+    myTaskDirPath = taskDirPath;
+    myTestCommandLine = testCommandLine;
+    myTestRunner = testRunner;
+    myCache = cache;
+    myExecutor = executor;
+  }
+
+  /**
+   * @param listener gets results of tests run against text typed by user
+   * @return result of check, statuses of windows are specified only if tests failed
+   * @throws ProcessCanceledException if check was cancelled
+   */
+  @NotNull
+  public StudyCheckCache.Result check(@Nullable final StudyTestRunner.TestResultListener listener)
+    throws IOException, java.util.concurrent.ExecutionException {
+    File checkDir = null;
+    try {
+      myTestsText = FileUtil.loadFile(new File(myTestCommandLine.getParametersList().get(0)));
+      myTaskPath = FileUtil.join(myTaskDirPath, myFileName);
+      myLegacyTestHelper = StudyTestRunner.isLegacyTestHelper(myTestCommandLine);
+      myTestHelperText = StudyTestRunner.loadTestHelper(myTestCommandLine);
+      myTaskFilesKey = StudyCheckCache.getTaskFilesKey(myTestCommandLine.getWorkDirectory(), myFileName);
+      myLimitsKey = myTestRunner.getLimitsKey();
+      String cacheKey = StudyCheckCache.getKey(mySnapshot, myTaskPath, myTestsText, myTestHelperText, myTaskFilesKey,
+                                               myLimitsKey, myTestCommandLine.getExePath());
+      StudyCheckCache.Result cachedResult = myCache.get(cacheKey);
+      if (cachedResult != null) {
+        return cachedResult;
+      }
+      checkDir = FileUtil.createTempDirectory("study_check", null);
+      final GeneralCommandLine commandLine = createCommandLine(checkDir, USER_VARIANT, mySnapshot.getUserVariant());
+      Future<StudyTestRunner.Outcome> testResult = myExecutor.submit(new Callable<StudyTestRunner.Outcome>() {
+        @Override
+        public StudyTestRunner.Outcome call() throws ExecutionException {
+          return myTestRunner.runTests(commandLine, listener);
+        }
+      });
+      StudyTestRunner.Outcome outcome = waitFor(testResult);
+      String failedMessage = outcome.getFailedMessage();
+      Map<Integer, StudyStatus> windowStatuses = new HashMap<Integer, StudyStatus>();
+      if (failedMessage.equals(StudyTestRunner.TEST_OK)) {
+        StudyCheckCache.Result result = new StudyCheckCache.Result(failedMessage, windowStatuses);
+        myCache.put(cacheKey, result);
+        return result;
+      }
+      windowsCheckStarted();
+      Map<StudyFileSnapshot.Window, Boolean> windowResults = new HashMap<StudyFileSnapshot.Window, Boolean>();
+      List<StudyFileSnapshot.Window> uncheckedWindows = new ArrayList<StudyFileSnapshot.Window>();
+      for (StudyFileSnapshot.Window window : mySnapshot.getWindows()) {
+        StudyCheckCache.Result windowResult = myCache.get(getWindowKey(window));
+        if (windowResult != null) {
+          windowResults.put(window, windowResult.getFailedMessage().equals(StudyTestRunner.TEST_OK));
+        }
+        else {
+          uncheckedWindows.add(window);
+        }
+      }
+      StudyWindowLocalizer localizer = new StudyWindowLocalizer(StudyWindowLocalizer.getMode(), myExecutor) {
+        @Override
+        protected <R> R waitFor(@NotNull final Future<R> future) throws java.util.concurrent.ExecutionException {
+          return StudyChecker.this.waitFor(future);
+        }
+      };
+      boolean allFailed = uncheckedWindows.size() == mySnapshot.getWindows().size();
+      VariantChecker variantChecker = new VariantChecker(checkDir);
+      windowResults.putAll(localizer.localize(uncheckedWindows, allFailed, variantChecker));
+      boolean completed = !variantChecker.myTimedOut && !failedMessage.equals(StudyProcessManager.TIME_LIMIT_EXCEEDED);
+      for (StudyFileSnapshot.Window window : mySnapshot.getWindows()) {
+        Boolean passed = windowResults.get(window);
+        if (passed == null) {
+          completed = false;
+        }
+        windowStatuses.put(window.getTaskWindow().getIndex(), Boolean.TRUE.equals(passed) ? StudyStatus.Solved : StudyStatus.Failed);
+      }
+      StudyCheckCache.Result result = new StudyCheckCache.Result(failedMessage, outcome.getErrorOutput(), windowStatuses);
+      if (completed) {
+        myCache.put(cacheKey, result);
+      }
+      return result;
+    }
+    finally {
+      if (checkDir != null) {
+        FileUtil.delete(checkDir);
+      }
+    }
+  }
+
+  /**
+   * Called when tests failed and windows are going to be checked one by one
+   */
+  protected void windowsCheckStarted() {
+  }
+
+  /**
+   * Waits for tests run in executor
+   *
+   * @throws ProcessCanceledException if waiting thread was interrupted, tests are interrupted in this case
+   */
+  protected <R> R waitFor(@NotNull final Future<R> future) throws java.util.concurrent.ExecutionException {
+    try {
+      return future.get();
+    }
+    catch (InterruptedException e) {
+      future.cancel(true);
+      throw new ProcessCanceledException();
+    }
+  }
+
+  /**
+   * Writes text to be checked preserving "lessonX/taskY/file" structure of path
+   * which is used by test helper to find initial text of file. Texts of windows
+   * are passed to tests in environment.
+   *
+   * @return command line which runs tests against written text
+   */
+  private GeneralCommandLine createCommandLine(@NotNull final File checkDir, @NotNull final String variantName,
+                                               @NotNull final StudyFileSnapshot.Variant variant) throws IOException {
+    return createCommandLine(new File(checkDir, variantName), myTaskDirPath, myFileName, variant, myTestCommandLine,
+                             myLegacyTestHelper);
+  }
+
+  /**
+   * Writes variant to "lessonX/taskY/file" under specified directory
+   *
+   * @param testCommandLine  command line which runs tests against original file
+   * @param legacyTestHelper if texts of windows should be also written to file for old test helper
+   * @return command line which runs the same tests against written variant
+   */
+  @NotNull
+  public static GeneralCommandLine createCommandLine(@NotNull final File dir, @NotNull final String taskDirPath,
+                                                     @NotNull final String fileName,
+                                                     @NotNull final StudyFileSnapshot.Variant variant,
+                                                     @NotNull final GeneralCommandLine testCommandLine,
+                                                     boolean legacyTestHelper) throws IOException {
+    File variantDir = new File(dir, taskDirPath);
+    if (!variantDir.mkdirs()) {
+      throw new IOException("failed to create " + variantDir.getPath());
+    }
+    File variantFile = variant.write(variantDir, fileName);
+    if (legacyTestHelper) {
+      variant.writeWindowsFile(variantDir, fileName);
+    }
+    GeneralCommandLine commandLine = StudyTestRunner.withExecutablePath(testCommandLine, variantFile.getPath());
+    commandLine.getEnvironment().put(StudyFileSnapshot.WINDOWS_ENV, variant.getWindowsJson());
+    return commandLine;
+  }
+
+  private String getWindowKey(@NotNull final StudyFileSnapshot.Window window) {
+    StudyFileSnapshot.Variant variant = mySnapshot.getVariantWithUserWindow(window);
+    return StudyCheckCache.getWindowKey(variant, window.getTaskWindow().getIndex(), myTaskPath, myTestsText, myTestHelperText,
+                                        myTaskFilesKey, myLimitsKey, myTestCommandLine.getExePath());
+  }
+
+  /**
+   * Runs tests against variant with some windows typed by user,
+   * results of checks of single windows are cached unless tests exceeded time limit
+   */
+  private class VariantChecker implements StudyWindowLocalizer.Checker<StudyFileSnapshot.Window> {
+    private final File myCheckDir;
+    private volatile boolean myTimedOut = false;
+
+    VariantChecker(@NotNull final File checkDir) {
+      myCheckDir = checkDir;
+    }
+
+    @Override
+    public boolean passes(@NotNull final List<StudyFileSnapshot.Window> userWindows) throws Exception {
+      StudyFileSnapshot.Variant variant = mySnapshot.getVariantWithUserWindows(userWindows);
+      GeneralCommandLine commandLine = createCommandLine(myCheckDir, WINDOW_VARIANT + myVariantCount.incrementAndGet(), variant);
+      String failedMessage = myTestRunner.runTests(commandLine, null).getFailedMessage();
+      if (failedMessage.equals(StudyProcessManager.TIME_LIMIT_EXCEEDED)) {
+        myTimedOut = true;
+      }
+      else if (userWindows.size() == 1) {
+        myCache.put(getWindowKey(userWindows.get(0)), new StudyCheckCache.Result(failedMessage, new HashMap<Integer, StudyStatus>()));
+      }
+      return failedMessage.equals(StudyTestRunner.TEST_OK);
+    }
+  }
+}
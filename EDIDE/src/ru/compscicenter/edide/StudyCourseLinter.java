@@ -0,0 +1,183 @@
+package ru.compscicenter.edide;
+
+import com.google.gson.JsonParseException;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import ru.compscicenter.edide.course.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Command line tool which checks positions of task windows of courses without running tests.
+ * Every task file referenced by course.json is read once, its windows should fit the text,
+ * be listed in order of their positions and not overlap, hints of windows should exist in hints directory.
+ * Problems are printed as "path: message", exit code is 1 if any problem was found.
+ * <p/>
+ * Usage: StudyCourseLinter [--threads N] &lt;course dir&gt;...
+ */
+public class StudyCourseLinter {
+
+  /**
+   * @param text      text of task file given to students
+   * @param hintNames names of files in hints directory of course
+   * @return descriptions of problems of windows, windows are numbered from 1 as in course.json
+   */
+  @NotNull
+  public static List<String> lintTaskFile(@NotNull final TaskFile taskFile, @NotNull final String text,
+                                          @NotNull final Set<String> hintNames) {
+    List<String> problems = new ArrayList<String>();
+    List<Integer> lineStarts = new ArrayList<Integer>();
+    lineStarts.add(0);
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) == '\n') {
+        lineStarts.add(i + 1);
+      }
+    }
+    int previousEnd = -1;
+    List<TaskWindow> taskWindows = taskFile.getTaskWindows();
+    for (int i = 0; i < taskWindows.size(); i++) {
+      TaskWindow window = taskWindows.get(i);
+      String name = "window " + (i + 1);
+      String hint = window.getHint();
+      if (hint != null && !hint.isEmpty() && !hintNames.contains(hint)) {
+        problems.add(name + ": hint " + hint + " not found in " + Course.HINTS_DIR);
+      }
+      int line = window.getLine();
+      if (line < 0 || line >= lineStarts.size()) {
+        problems.add(name + ": line " + line + " is out of file with " + lineStarts.size() + " lines");
+        continue;
+      }
+      int lineEnd = line + 1 < lineStarts.size() ? lineStarts.get(line + 1) - 1 : text.length();
+      int lineLength = lineEnd - lineStarts.get(line);
+      if (window.getStart() < 0 || window.getStart() > lineLength) {
+        problems.add(name + ": start " + window.getStart() + " is out of line " + line + " of length " + lineLength);
+        continue;
+      }
+      int start = lineStarts.get(line) + window.getStart();
+      int end = start + window.getLength();
+      if (window.getLength() < 0 || end > text.length()) {
+        problems.add(name + ": length " + window.getLength() + " is out of file");
+        continue;
+      }
+      if (previousEnd > start) {
+        problems.add(name + ": overlaps previous window or is listed before it");
+      }
+      previousEnd = Math.max(previousEnd, end);
+    }
+    return problems;
+  }
+
+  /**
+   * @return problems of course, every one is prefixed with path of task file relative to course directory
+   */
+  @NotNull
+  public static List<String> lintCourse(@NotNull final File courseDir, @NotNull final ExecutorService executor)
+    throws IOException, InterruptedException, ExecutionException {
+    // course isn't initialized, initialization sorts windows by their positions
+    final Course course = StudyBatchGrader.readCourse(new File(courseDir, StudyBatchGrader.COURSE_FILE));
+    final Set<String> hintNames = new HashSet<String>();
+    String[] hints = new File(courseDir, Course.HINTS_DIR).list();
+    if (hints != null) {
+      Collections.addAll(hintNames, hints);
+    }
+    List<Future<List<String>>> fileProblems = new ArrayList<Future<List<String>>>();
+    List<Lesson> lessons = course.getLessons();
+    for (int i = 0; i < lessons.size(); i++) {
+      List<Task> tasks = lessons.get(i).getTaskList();
+      for (int j = 0; j < tasks.size(); j++) {
+        final Task task = tasks.get(j);
+        final String taskDirPath = Task.getTaskDirPath(i, j);
+        final File taskDir = new File(courseDir, taskDirPath);
+        fileProblems.add(executor.submit(new Callable<List<String>>() {
+          @Override
+          public List<String> call() {
+            List<String> problems = new ArrayList<String>();
+            if (!new File(taskDir, task.getTestFile()).exists()) {
+              problems.add(FileUtil.join(taskDirPath, task.getTestFile()) + ": file not found");
+            }
+            for (Map.Entry<String, TaskFile> entry : task.getTaskFiles().entrySet()) {
+              String path = FileUtil.join(taskDirPath, entry.getKey());
+              try {
+                String text = FileUtil.loadFile(new File(taskDir, entry.getKey()));
+                for (String problem : lintTaskFile(entry.getValue(), text, hintNames)) {
+                  problems.add(path + ": " + problem);
+                }
+              }
+              catch (IOException e) {
+                problems.add(path + ": file not found");
+              }
+            }
+            return problems;
+          }
+        }));
+      }
+    }
+    List<String> problems = new ArrayList<String>();
+    for (Future<List<String>> future : fileProblems) {
+      problems.addAll(future.get());
+    }
+    return problems;
+  }
+
+  private static void printUsage() {
+    System.err.println("Usage: StudyCourseLinter [--threads N] <course dir>...");
+  }
+
+  public static void main(String[] args) throws Exception {
+    int threads = Runtime.getRuntime().availableProcessors();
+    List<File> courseDirs = new ArrayList<File>();
+    try {
+      for (int i = 0; i < args.length; i++) {
+        if (args[i].equals("--threads")) {
+          threads = Math.max(1, Integer.parseInt(args[++i]));
+        }
+        else {
+          courseDirs.add(new File(args[i]));
+        }
+      }
+    }
+    catch (ArrayIndexOutOfBoundsException e) {
+      courseDirs.clear();
+    }
+    catch (NumberFormatException e) {
+      courseDirs.clear();
+    }
+    if (courseDirs.isEmpty()) {
+      printUsage();
+      System.exit(2);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    int problemCount = 0;
+    try {
+      for (File courseDir : courseDirs) {
+        List<String> problems;
+        try {
+          problems = lintCourse(courseDir, executor);
+        }
+        catch (IOException e) {
+          problems = Collections.singletonList(StudyBatchGrader.COURSE_FILE + ": " + e.getMessage());
+        }
+        catch (JsonParseException e) {
+          problems = Collections.singletonList(StudyBatchGrader.COURSE_FILE + ": " + e.getMessage());
+        }
+        for (String problem : problems) {
+          System.out.println(FileUtil.join(courseDir.getPath(), problem));
+        }
+        problemCount += problems.size();
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+    System.err.println(problemCount + " problems found");
+    System.exit(problemCount == 0 ? 0 : 1);
+  }
+}
@@ -0,0 +1,229 @@
+package ru.compscicenter.edide;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.GsonBuilder;
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.compscicenter.edide.course.*;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Command line tool for course authors which validates course before it's published:
+ * every task file with all the windows replaced by possible answers should pass tests of its task
+ * and task file as it's given to students should fail them. Task files are validated in parallel,
+ * report is written in json format and exit code is 1 if any task file is invalid.
+ * <p/>
+ * Usage: StudyCourseValidator --course &lt;course dir&gt; [--python &lt;interpreter&gt;] [--threads N] [--output &lt;file.json&gt;]
+ */
+public class StudyCourseValidator {
+  public static final String VALID = "Valid";
+  public static final String ANSWERS_FAILED = "AnswersFailed";
+  public static final String TEMPLATE_PASSED = "TemplatePassed";
+  public static final String ERROR = "Error";
+  private final StudyBatchGrader myGrader;
+
+  /**
+   * Result of validation of one task file of course
+   */
+  public static class FileResult {
+    public int lesson;
+    public int task;
+    public String file;
+    public String status;
+    /**
+     * Failed message of tests run against possible answers, it's null if they passed
+     */
+    public String answersMessage;
+    /**
+     * Whether tests passed for task file given to students
+     */
+    public boolean templatePassed;
+    public String message;
+    public long durationMs;
+  }
+
+  public StudyCourseValidator(@NotNull final StudyBatchGrader grader) {
+    myGrader = grader;
+  }
+
+  @NotNull
+  public List<Callable<FileResult>> getValidations(@Nullable final StudyTestWorker worker) {
+    List<Callable<FileResult>> validations = new ArrayList<Callable<FileResult>>();
+    for (Lesson lesson : myGrader.getCourse().getLessons()) {
+      for (final Task task : lesson.getTaskList()) {
+        for (final Map.Entry<String, TaskFile> entry : task.getTaskFiles().entrySet()) {
+          validations.add(new Callable<FileResult>() {
+            @Override
+            public FileResult call() {
+              return validate(task, entry.getKey(), entry.getValue(), worker);
+            }
+          });
+        }
+      }
+    }
+    return validations;
+  }
+
+  /**
+   * Runs tests of task against possible answers and against initial text of task file
+   *
+   * @param worker warm worker tests are run on, new processes are started if it's null
+   */
+  @NotNull
+  public FileResult validate(@NotNull final Task task, @NotNull final String fileName, @NotNull final TaskFile taskFile,
+                             @Nullable final StudyTestWorker worker) {
+    FileResult result = new FileResult();
+    result.lesson = task.getLesson().getIndex() + 1;
+    result.task = task.getIndex() + 1;
+    result.file = fileName;
+    long start = System.currentTimeMillis();
+    String taskDirPath = task.getTaskDirPath();
+    File workDir = new File(myGrader.getCourseDir(), taskDirPath);
+    File checkDir = null;
+    try {
+      StudyFileSnapshot snapshot = StudyFileSnapshot.create(FileUtil.loadFile(new File(workDir, fileName)), taskFile);
+      if (snapshot.getWindows().size() != taskFile.getTaskWindows().size()) {
+        result.status = ERROR;
+        result.message = "task windows don't fit task file";
+        return result;
+      }
+      checkDir = FileUtil.createTempDirectory("study_validate", null);
+      GeneralCommandLine testCommandLine = myGrader.createTestCommandLine(task, fileName, workDir);
+      boolean legacyTestHelper = StudyTestRunner.isLegacyTestHelper(testCommandLine);
+      long timeLimit = StudyProcessManager.getTimeLimit(myGrader.getCourse());
+      ResourceLimits limits = StudyProcessManager.getLimits(myGrader.getCourse(), task);
+
+      GeneralCommandLine answersCommandLine = StudyChecker.createCommandLine(new File(checkDir, "answers"), taskDirPath, fileName,
+                                                                             snapshot.getAnswersVariant(), testCommandLine,
+                                                                             legacyTestHelper);
+      String answersMessage = StudyTestRunner.runTests(answersCommandLine, null, timeLimit, limits, worker).getFailedMessage();
+      GeneralCommandLine templateCommandLine = StudyChecker.createCommandLine(new File(checkDir, "template"), taskDirPath, fileName,
+                                                                              snapshot.getUserVariant(), testCommandLine,
+                                                                              legacyTestHelper);
+      String templateMessage = StudyTestRunner.runTests(templateCommandLine, null, timeLimit, limits, worker).getFailedMessage();
+
+      boolean answersPassed = answersMessage.equals(StudyTestRunner.TEST_OK);
+      result.answersMessage = answersPassed ? null : answersMessage;
+      result.templatePassed = templateMessage.equals(StudyTestRunner.TEST_OK);
+      if (!answersPassed) {
+        result.status = ANSWERS_FAILED;
+      }
+      else if (result.templatePassed && !snapshot.getWindows().isEmpty()) {
+        result.status = TEMPLATE_PASSED;
+      }
+      else {
+        result.status = VALID;
+      }
+    }
+    catch (IOException e) {
+      result.status = ERROR;
+      result.message = e.getMessage();
+    }
+    catch (ExecutionException e) {
+      result.status = ERROR;
+      result.message = e.getMessage();
+    }
+    finally {
+      if (checkDir != null) {
+        FileUtil.delete(checkDir);
+      }
+      result.durationMs = System.currentTimeMillis() - start;
+    }
+    return result;
+  }
+
+  public static void writeJson(@NotNull final List<FileResult> results, @NotNull final Writer writer) throws IOException {
+    new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES).setPrettyPrinting().create()
+      .toJson(results, writer);
+    writer.write("\n");
+  }
+
+  private static void printUsage() {
+    System.err.println("Usage: StudyCourseValidator --course <course dir> [--python <interpreter>] [--threads N] [--output <file.json>]");
+  }
+
+  public static void main(String[] args) throws Exception {
+    File courseDir = null;
+    String pythonPath = "python";
+    int threads = Runtime.getRuntime().availableProcessors();
+    String output = null;
+    try {
+      for (int i = 0; i < args.length; i++) {
+        if (args[i].equals("--course")) {
+          courseDir = new File(args[++i]);
+        }
+        else if (args[i].equals("--python")) {
+          pythonPath = args[++i];
+        }
+        else if (args[i].equals("--threads")) {
+          threads = Math.max(1, Integer.parseInt(args[++i]));
+        }
+        else if (args[i].equals("--output")) {
+          output = args[++i];
+        }
+        else {
+          courseDir = null;
+          break;
+        }
+      }
+    }
+    catch (ArrayIndexOutOfBoundsException e) {
+      courseDir = null;
+    }
+    catch (NumberFormatException e) {
+      courseDir = null;
+    }
+    if (courseDir == null) {
+      printUsage();
+      System.exit(2);
+    }
+
+    StudyBatchGrader grader = new StudyBatchGrader(courseDir, pythonPath);
+    StudyCourseValidator validator = new StudyCourseValidator(grader);
+    StudyTestWorker worker = grader.createWorker();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<FileResult> results = new ArrayList<FileResult>();
+    boolean valid = true;
+    try {
+      for (Future<FileResult> result : executor.invokeAll(validator.getValidations(worker))) {
+        FileResult fileResult = result.get();
+        valid &= VALID.equals(fileResult.status);
+        results.add(fileResult);
+        System.err.println(FileUtil.join(Lesson.LESSON_DIR + fileResult.lesson, Task.TASK_DIR + fileResult.task, fileResult.file) + ": " +
+                           fileResult.status);
+      }
+    }
+    finally {
+      executor.shutdownNow();
+      if (worker != null) {
+        worker.stop();
+      }
+    }
+
+    Writer writer = output != null
+                    ? new OutputStreamWriter(new FileOutputStream(output), Charset.forName("UTF-8"))
+                    : new OutputStreamWriter(System.out, Charset.forName("UTF-8"));
+    try {
+      writeJson(results, writer);
+    }
+    finally {
+      writer.flush();
+      if (output != null) {
+        writer.close();
+      }
+    }
+    System.exit(valid ? 0 : 1);
+  }
+}
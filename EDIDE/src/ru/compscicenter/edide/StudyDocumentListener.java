@@ -6,9 +6,13 @@ import com.intellij.openapi.editor.LogicalPosition;
 import com.intellij.openapi.editor.event.DocumentAdapter;
 import com.intellij.openapi.editor.event.DocumentEvent;
 import com.intellij.openapi.editor.impl.event.DocumentEventImpl;
+import org.jetbrains.annotations.NotNull;
 import ru.compscicenter.edide.course.TaskFile;
 import ru.compscicenter.edide.course.TaskWindow;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * author: liana
  * data: 7/16/14.
@@ -16,13 +20,37 @@ import ru.compscicenter.edide.course.TaskWindow;
  * coordinates of all the windows in current task file
  */
 public class StudyDocumentListener extends DocumentAdapter {
+  /**
+   * System property which switches tracking of windows from range markers back to this listener
+   */
+  public static final String LEGACY_TRACKING_PROPERTY = "study.windows.legacy.tracking";
   private final TaskFile myTaskFile;
+  private final boolean myMarkersTracking;
   private int oldLine;
   private int oldLineStartOffset;
   private TaskWindow myTaskWindow;
+  private List<TaskWindow> myChangedWindows = null;
+  private List<TaskWindow> myBulkWindows = null;
+  private StudyBulkEditBuffer myBulkBuffer = null;
 
   public StudyDocumentListener(TaskFile taskFile) {
+    this(taskFile, false);
+  }
+
+  /**
+   * @param markersTracking if windows are tracked by range markers, listener only keeps last known positions
+   *                        of windows before they are changed
+   */
+  public StudyDocumentListener(TaskFile taskFile, boolean markersTracking) {
     myTaskFile = taskFile;
+    myMarkersTracking = markersTracking;
+  }
+
+  /**
+   * @return if windows are tracked by this listener instead of range markers
+   */
+  public static boolean isLegacyTracking() {
+    return Boolean.getBoolean(LEGACY_TRACKING_PROPERTY);
   }
 
 
@@ -30,9 +58,16 @@ public class StudyDocumentListener extends DocumentAdapter {
   // with fragments containing "\n"
   @Override
   public void beforeDocumentChange(DocumentEvent e) {
+    if (myBulkBuffer != null) {
+      return;
+    }
     int offset = e.getOffset();
     int oldEnd = offset + e.getOldLength();
     Document document = e.getDocument();
+    if (myMarkersTracking) {
+      myChangedWindows = myTaskFile.updateWindowPositions(document, offset, oldEnd);
+      return;
+    }
     oldLine = document.getLineNumber(oldEnd);
     oldLineStartOffset = document.getLineStartOffset(oldLine);
     int line = document.getLineNumber(offset);
@@ -44,6 +79,20 @@ public class StudyDocumentListener extends DocumentAdapter {
 
   @Override
   public void documentChanged(DocumentEvent e) {
+    if (myMarkersTracking) {
+      // markers of windows are invalidated if text containing them is replaced
+      if (myChangedWindows != null) {
+        for (TaskWindow window : myChangedWindows) {
+          window.restoreInvalidRangeMarker();
+        }
+        myChangedWindows = null;
+      }
+      return;
+    }
+    if (myBulkBuffer != null) {
+      myBulkBuffer.change(e.getOffset(), e.getOldLength(), e.getNewLength());
+      return;
+    }
     if (e instanceof DocumentEventImpl) {
       DocumentEventImpl event = (DocumentEventImpl)e;
       Document document = e.getDocument();
@@ -56,11 +105,55 @@ public class StudyDocumentListener extends DocumentAdapter {
       int newEnd = offset + event.getNewLength();
       int newLine = document.getLineNumber(newEnd);
       int lineChange = newLine - oldLine;
-      myTaskFile.incrementLines(oldLine + 1, lineChange);
       int newEndOffsetInLine = offset + e.getNewLength() - document.getLineStartOffset(newLine);
       int oldEndOffsetInLine = offset + e.getOldLength() - oldLineStartOffset;
-      myTaskFile.updateLine(lineChange, oldLine, newEndOffsetInLine, oldEndOffsetInLine);
-      System.out.println();
+      myTaskFile.updateWindows(oldLine, lineChange, newEndOffsetInLine, oldEndOffsetInLine, myTaskWindow);
+    }
+  }
+
+  /**
+   * Starts buffering of changes: windows are moved by offsets only
+   * and their lines are recomputed once in {@link #bulkUpdateFinished(Document)}
+   */
+  public void bulkUpdateStarted(@NotNull final Document document) {
+    if (myMarkersTracking) {
+      return;
+    }
+    myBulkWindows = new ArrayList<TaskWindow>();
+    for (TaskWindow window : myTaskFile.getTaskWindows()) {
+      if (window.isValid(document)) {
+        myBulkWindows.add(window);
+      }
+    }
+    int[] starts = new int[myBulkWindows.size()];
+    int[] ends = new int[myBulkWindows.size()];
+    for (int i = 0; i < myBulkWindows.size(); i++) {
+      TaskWindow window = myBulkWindows.get(i);
+      starts[i] = window.getRealStartOffset(document);
+      ends[i] = starts[i] + window.getLength();
+    }
+    myBulkBuffer = new StudyBulkEditBuffer(starts, ends);
+  }
+
+  public void bulkUpdateFinished(@NotNull final Document document) {
+    if (myMarkersTracking) {
+      myTaskFile.restoreInvalidRangeMarkers();
+      return;
+    }
+    if (myBulkBuffer == null) {
+      return;
+    }
+    int textLength = document.getTextLength();
+    for (int i = 0; i < myBulkWindows.size(); i++) {
+      TaskWindow window = myBulkWindows.get(i);
+      int start = Math.min(myBulkBuffer.getStart(i), textLength);
+      int end = Math.min(myBulkBuffer.getEnd(i), textLength);
+      int line = document.getLineNumber(start);
+      window.setLine(line);
+      window.setStart(start - document.getLineStartOffset(line));
+      window.setLength(end - start);
     }
+    myBulkWindows = null;
+    myBulkBuffer = null;
   }
 }
@@ -0,0 +1,98 @@
+package ru.compscicenter.edide;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentAdapter;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.compscicenter.edide.course.TaskFile;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records changes of documents of task files into logs which can be replayed by {@link ru.compscicenter.edide.StudyEditSession}.
+ * Recording is turned on by system property with directory for logs, every opened task file gets its own log.
+ */
+public class StudyEditRecorder extends DocumentAdapter {
+  private static final Logger LOG = Logger.getInstance(StudyEditRecorder.class.getName());
+  /**
+   * System property with directory where edit sessions are recorded
+   */
+  public static final String RECORDING_DIR_PROPERTY = "study.edit.recording.dir";
+  public static final String LOG_EXTENSION = ".session";
+  private static final Map<Document, StudyEditRecorder> ourRecorders = new HashMap<Document, StudyEditRecorder>();
+  private final DataOutputStream myOutput;
+  private long myLastChangeTime;
+
+  public StudyEditRecorder(@NotNull final OutputStream output, @NotNull final Document document, @NotNull final TaskFile taskFile)
+    throws IOException {
+    myOutput = new DataOutputStream(new BufferedOutputStream(output));
+    StudyEditSession.writeHeader(myOutput, document.getCharsSequence(), taskFile);
+    myLastChangeTime = System.nanoTime();
+  }
+
+  @Nullable
+  public static File getRecordingDir() {
+    String dir = System.getProperty(RECORDING_DIR_PROPERTY);
+    return dir != null ? new File(dir) : null;
+  }
+
+  /**
+   * Starts recording of document if recording is turned on and document isn't recorded yet
+   *
+   * @param name name of task file, log is named after it
+   */
+  public static void start(@NotNull final Document document, @NotNull final TaskFile taskFile, @NotNull final String name) {
+    File dir = getRecordingDir();
+    if (dir == null || ourRecorders.containsKey(document)) {
+      return;
+    }
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      LOG.warn("can't create directory for edit sessions " + dir);
+      return;
+    }
+    try {
+      File log = new File(dir, name + "-" + System.currentTimeMillis() + LOG_EXTENSION);
+      StudyEditRecorder recorder = new StudyEditRecorder(new FileOutputStream(log), document, taskFile);
+      ourRecorders.put(document, recorder);
+      document.addDocumentListener(recorder);
+    }
+    catch (IOException e) {
+      LOG.warn(e);
+    }
+  }
+
+  public static void stop(@NotNull final Document document) {
+    StudyEditRecorder recorder = ourRecorders.remove(document);
+    if (recorder != null) {
+      document.removeDocumentListener(recorder);
+      recorder.close();
+    }
+  }
+
+  @Override
+  public void documentChanged(DocumentEvent e) {
+    long time = System.nanoTime();
+    try {
+      StudyEditSession.writeChange(myOutput, new StudyEditSession.Change(time - myLastChangeTime, e.getOffset(),
+                                                                         e.getOldFragment().toString(),
+                                                                         e.getNewFragment().toString()));
+    }
+    catch (IOException exception) {
+      LOG.warn(exception);
+    }
+    myLastChangeTime = time;
+  }
+
+  public void close() {
+    try {
+      myOutput.close();
+    }
+    catch (IOException e) {
+      LOG.warn(e);
+    }
+  }
+}
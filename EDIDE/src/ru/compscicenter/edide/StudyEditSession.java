@@ -0,0 +1,223 @@
+package ru.compscicenter.edide;
+
+import com.intellij.openapi.editor.Document;
+import org.jetbrains.annotations.NotNull;
+import ru.compscicenter.edide.course.TaskFile;
+import ru.compscicenter.edide.course.TaskWindow;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Edit session of task file recorded by {@link ru.compscicenter.edide.StudyEditRecorder}:
+ * initial text and windows of task file and changes of its document.
+ * Session can be replayed on document without editor, e.g. to measure tracking of windows.
+ * <p/>
+ * Log is binary: magic number, initial text, windows as triples of line, start and length,
+ * then changes as nanoseconds since previous change, offset, old and new fragments.
+ * Numbers are written as variable length integers and strings as utf-8 bytes prefixed with length.
+ */
+public class StudyEditSession {
+  public static final int MAGIC = 0x53454C31;
+  private static final String CHARSET = "UTF-8";
+  private final String myText;
+  private final List<int[]> myWindows;
+  private final List<Change> myChanges;
+
+  /**
+   * Recorded change of document
+   */
+  public static class Change {
+    private final long myDelay;
+    private final int myOffset;
+    private final String myOldFragment;
+    private final String myNewFragment;
+
+    /**
+     * @param delay nanoseconds since previous change or since start of session
+     */
+    public Change(long delay, int offset, @NotNull final String oldFragment, @NotNull final String newFragment) {
+      myDelay = delay;
+      myOffset = offset;
+      myOldFragment = oldFragment;
+      myNewFragment = newFragment;
+    }
+
+    public long getDelay() {
+      return myDelay;
+    }
+
+    public int getOffset() {
+      return myOffset;
+    }
+
+    public String getOldFragment() {
+      return myOldFragment;
+    }
+
+    public String getNewFragment() {
+      return myNewFragment;
+    }
+
+    public void apply(@NotNull final Document document) {
+      document.replaceString(myOffset, myOffset + myOldFragment.length(), myNewFragment);
+    }
+  }
+
+  /**
+   * @param windows lines, starts and lengths of windows
+   */
+  public StudyEditSession(@NotNull final String text, @NotNull final List<int[]> windows, @NotNull final List<Change> changes) {
+    myText = text;
+    myWindows = windows;
+    myChanges = changes;
+  }
+
+  @NotNull
+  public String getText() {
+    return myText;
+  }
+
+  @NotNull
+  public List<Change> getChanges() {
+    return Collections.unmodifiableList(myChanges);
+  }
+
+  /**
+   * Creates task file with windows in their initial positions
+   */
+  @NotNull
+  public TaskFile createTaskFile() {
+    TaskFile taskFile = new TaskFile();
+    for (int[] window : myWindows) {
+      TaskWindow taskWindow = new TaskWindow();
+      taskWindow.setLine(window[0]);
+      taskWindow.setStart(window[1]);
+      taskWindow.setLength(window[2]);
+      taskFile.getTaskWindows().add(taskWindow);
+    }
+    return taskFile;
+  }
+
+  /**
+   * Applies all the changes of session to document with initial text of session
+   */
+  public void replay(@NotNull final Document document) {
+    for (Change change : myChanges) {
+      change.apply(document);
+    }
+  }
+
+  /**
+   * Writes initial text and windows of session
+   */
+  public static void writeHeader(@NotNull final DataOutput output, @NotNull final CharSequence text,
+                                 @NotNull final TaskFile taskFile) throws IOException {
+    output.writeInt(MAGIC);
+    writeString(output, text.toString());
+    List<TaskWindow> taskWindows = taskFile.getTaskWindows();
+    writeNumber(output, taskWindows.size());
+    for (TaskWindow taskWindow : taskWindows) {
+      writeNumber(output, taskWindow.getLine());
+      writeNumber(output, taskWindow.getStart());
+      writeNumber(output, taskWindow.getLength());
+    }
+  }
+
+  public static void writeChange(@NotNull final DataOutput output, @NotNull final Change change) throws IOException {
+    writeNumber(output, change.myDelay);
+    writeNumber(output, change.myOffset);
+    writeString(output, change.myOldFragment);
+    writeString(output, change.myNewFragment);
+  }
+
+  public void write(@NotNull final OutputStream outputStream) throws IOException {
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream));
+    output.writeInt(MAGIC);
+    writeString(output, myText);
+    writeNumber(output, myWindows.size());
+    for (int[] window : myWindows) {
+      for (int value : window) {
+        writeNumber(output, value);
+      }
+    }
+    for (Change change : myChanges) {
+      writeChange(output, change);
+    }
+    output.flush();
+  }
+
+  /**
+   * Reads session, change written partially at the end of log is ignored
+   */
+  @NotNull
+  public static StudyEditSession read(@NotNull final InputStream inputStream) throws IOException {
+    DataInputStream input = new DataInputStream(new BufferedInputStream(inputStream));
+    if (input.readInt() != MAGIC) {
+      throw new IOException("not an edit session log");
+    }
+    String text = readString(input);
+    int windowCount = (int)readNumber(input);
+    List<int[]> windows = new ArrayList<int[]>();
+    for (int i = 0; i < windowCount; i++) {
+      windows.add(new int[]{(int)readNumber(input), (int)readNumber(input), (int)readNumber(input)});
+    }
+    List<Change> changes = new ArrayList<Change>();
+    while (true) {
+      try {
+        long delay = readNumber(input);
+        changes.add(new Change(delay, (int)readNumber(input), readString(input), readString(input)));
+      }
+      catch (EOFException e) {
+        break;
+      }
+    }
+    return new StudyEditSession(text, windows, changes);
+  }
+
+  @NotNull
+  public static StudyEditSession read(@NotNull final File file) throws IOException {
+    InputStream input = new FileInputStream(file);
+    try {
+      return read(input);
+    }
+    finally {
+      input.close();
+    }
+  }
+
+  private static void writeNumber(@NotNull final DataOutput output, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      output.writeByte((int)(value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    output.writeByte((int)value);
+  }
+
+  private static long readNumber(@NotNull final DataInput input) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = input.readByte();
+      value |= (long)(b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("malformed number");
+  }
+
+  private static void writeString(@NotNull final DataOutput output, @NotNull final String value) throws IOException {
+    byte[] bytes = value.getBytes(CHARSET);
+    writeNumber(output, bytes.length);
+    output.write(bytes);
+  }
+
+  @NotNull
+  private static String readString(@NotNull final DataInput input) throws IOException {
+    byte[] bytes = new byte[(int)readNumber(input)];
+    input.readFully(bytes);
+    return new String(bytes, CHARSET);
+  }
+}
@@ -4,6 +4,7 @@ package ru.compscicenter.edide;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.EditorFactory;
 import com.intellij.openapi.editor.LogicalPosition;
 import com.intellij.openapi.editor.event.EditorFactoryEvent;
 import com.intellij.openapi.editor.event.EditorFactoryListener;
@@ -17,6 +18,7 @@ import ru.compscicenter.edide.course.StudyStatus;
 import ru.compscicenter.edide.course.TaskFile;
 import ru.compscicenter.edide.course.TaskWindow;
 import ru.compscicenter.edide.editor.StudyEditor;
+import ru.compscicenter.edide.editor.StudyHighlighterRegistry;
 
 import java.awt.*;
 
@@ -74,10 +76,15 @@ class StudyEditorFactoryListener implements EditorFactoryListener {
                 TaskFile taskFile = taskManager.getTaskFile(openedFile);
                 if (taskFile != null) {
                   editor.addEditorMouseListener(new WindowSelectionListener(taskFile));
-                  StudyDocumentListener listener = new StudyDocumentListener(taskFile);
+                  boolean markersTracking = !StudyDocumentListener.isLegacyTracking();
+                  StudyDocumentListener listener = new StudyDocumentListener(taskFile, markersTracking);
                   StudyEditor.addDocumentListener(document, listener);
                   document.addDocumentListener(listener);
+                  if (markersTracking) {
+                    taskFile.createRangeMarkers(document);
+                  }
                   taskFile.drawAllWindows(editor);
+                  StudyEditRecorder.start(document, taskFile, openedFile.getName());
                 }
               }
             }
@@ -96,7 +103,35 @@ class StudyEditorFactoryListener implements EditorFactoryListener {
       document.removeDocumentListener(listener);
       StudyEditor.removeListener(document);
     }
-    editor.getMarkupModel().removeAllHighlighters();
+    if (isLastEditor(editor)) {
+      StudyEditRecorder.stop(document);
+      disposeRangeMarkers(editor);
+    }
+    StudyHighlighterRegistry.release(editor);
     editor.getSelectionModel().removeSelection();
   }
+
+  private static boolean isLastEditor(@NotNull final Editor releasedEditor) {
+    for (Editor editor : EditorFactory.getInstance().getEditors(releasedEditor.getDocument())) {
+      if (editor != releasedEditor) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Range markers of windows are disposed when the last editor of task file is closed
+   */
+  private static void disposeRangeMarkers(@NotNull final Editor releasedEditor) {
+    Project project = releasedEditor.getProject();
+    VirtualFile file = FileDocumentManager.getInstance().getFile(releasedEditor.getDocument());
+    if (project == null || project.isDisposed() || file == null) {
+      return;
+    }
+    TaskFile taskFile = StudyTaskManager.getInstance(project).getTaskFile(file);
+    if (taskFile != null) {
+      taskFile.disposeRangeMarkers();
+    }
+  }
 }
@@ -0,0 +1,243 @@
+package ru.compscicenter.edide;
+
+import com.google.gson.Gson;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import ru.compscicenter.edide.course.TaskFile;
+import ru.compscicenter.edide.course.TaskWindow;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Copy of task file text and its task windows made at the moment of check.
+ * Texts which are checked (user's text, text with answers, text with answers
+ * and one window typed by user) are built from it in memory, so check
+ * doesn't modify documents or files in project.
+ */
+public class StudyFileSnapshot {
+  /**
+   * Environment variable with json array of texts of task windows, it's read by test helper
+   */
+  public static final String WINDOWS_ENV = "STUDY_PLUGIN_WINDOWS";
+  public static final String WINDOW_PREFIX = "#study_plugin_window = ";
+  public static final String WINDOWS_FILE_SUFFIX = "_windows";
+  private final String myText;
+  private final List<Window> myWindows;
+
+  public static class Window {
+    private final TaskWindow myTaskWindow;
+    private final int myStartOffset;
+    private final int myLength;
+    private final String myUserText;
+    private final String myPossibleAnswer;
+
+    public Window(@NotNull final TaskWindow taskWindow, int startOffset, int length,
+                  @NotNull final String userText, @NotNull final String possibleAnswer) {
+      myTaskWindow = taskWindow;
+      myStartOffset = startOffset;
+      myLength = length;
+      myUserText = userText;
+      myPossibleAnswer = possibleAnswer;
+    }
+
+    /**
+     * @return task window of user's task file which snapshot was made from
+     */
+    public TaskWindow getTaskWindow() {
+      return myTaskWindow;
+    }
+
+    public int getStartOffset() {
+      return myStartOffset;
+    }
+
+    public int getLength() {
+      return myLength;
+    }
+
+    public String getUserText() {
+      return myUserText;
+    }
+
+    public String getPossibleAnswer() {
+      return myPossibleAnswer;
+    }
+  }
+
+  /**
+   * Text of file to be checked with texts of its task windows
+   */
+  public static class Variant {
+    private final String myText;
+    private final List<String> myWindowTexts;
+
+    Variant(@NotNull final String text, @NotNull final List<String> windowTexts) {
+      myText = text;
+      myWindowTexts = windowTexts;
+    }
+
+    public String getText() {
+      return myText;
+    }
+
+    public List<String> getWindowTexts() {
+      return myWindowTexts;
+    }
+
+    /**
+     * @return texts of windows to be passed to tests in {@link ru.compscicenter.edide.StudyFileSnapshot#WINDOWS_ENV}
+     */
+    public String getWindowsJson() {
+      return new Gson().toJson(myWindowTexts);
+    }
+
+    /**
+     * Writes variant to directory outside of project
+     *
+     * @return written file
+     */
+    public File write(@NotNull final File dir, @NotNull final String fileName) throws IOException {
+      File file = new File(dir, fileName);
+      FileUtil.writeToFile(file, myText);
+      return file;
+    }
+
+    /**
+     * Writes description of windows next to variant for test helpers which don't read
+     * {@link ru.compscicenter.edide.StudyFileSnapshot#WINDOWS_ENV}
+     */
+    public void writeWindowsFile(@NotNull final File dir, @NotNull final String fileName) throws IOException {
+      StringBuilder windows = new StringBuilder();
+      for (String windowText : myWindowTexts) {
+        windows.append(WINDOW_PREFIX).append(windowText).append("\n");
+      }
+      FileUtil.writeToFile(new File(dir, FileUtil.getNameWithoutExtension(fileName) + WINDOWS_FILE_SUFFIX), windows.toString());
+    }
+  }
+
+  /**
+   * Windows which are out of text or overlap previous window are skipped
+   */
+  public StudyFileSnapshot(@NotNull final String text, @NotNull final List<Window> windows) {
+    myText = text;
+    List<Window> sortedWindows = new ArrayList<Window>(windows);
+    Collections.sort(sortedWindows, new Comparator<Window>() {
+      @Override
+      public int compare(Window window1, Window window2) {
+        return window1.getStartOffset() - window2.getStartOffset();
+      }
+    });
+    myWindows = new ArrayList<Window>(sortedWindows.size());
+    int previousEnd = 0;
+    for (Window window : sortedWindows) {
+      int end = window.getStartOffset() + window.getLength();
+      if (window.getStartOffset() < previousEnd || window.getLength() < 0 || end > text.length()) {
+        continue;
+      }
+      myWindows.add(window);
+      previousEnd = end;
+    }
+  }
+
+  /**
+   * Makes snapshot of document, should be called inside read action.
+   * Windows which don't fit the document are skipped.
+   */
+  public static StudyFileSnapshot create(@NotNull final Document document, @NotNull final TaskFile taskFile) {
+    List<Window> windows = new ArrayList<Window>();
+    for (TaskWindow taskWindow : taskFile.getTaskWindows()) {
+      if (!taskWindow.isValid(document)) {
+        continue;
+      }
+      int start = taskWindow.getRealStartOffset(document);
+      int length = taskWindow.getLength();
+      String userText = document.getText(new TextRange(start, start + length));
+      String possibleAnswer = taskWindow.getPossibleAnswer();
+      windows.add(new Window(taskWindow, start, length, userText, possibleAnswer != null ? possibleAnswer : ""));
+    }
+    return new StudyFileSnapshot(document.getText(), windows);
+  }
+
+  /**
+   * Makes snapshot of text of task file read outside of IDE, e.g. from exported project of student.
+   * Windows which don't fit the text are skipped.
+   */
+  public static StudyFileSnapshot create(@NotNull final String text, @NotNull final TaskFile taskFile) {
+    List<Integer> lineStarts = new ArrayList<Integer>();
+    lineStarts.add(0);
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) == '\n') {
+        lineStarts.add(i + 1);
+      }
+    }
+    List<Window> windows = new ArrayList<Window>();
+    for (TaskWindow taskWindow : taskFile.getTaskWindows()) {
+      int line = taskWindow.getLine();
+      if (line < 0 || line >= lineStarts.size() || taskWindow.getStart() < 0) {
+        continue;
+      }
+      int start = lineStarts.get(line) + taskWindow.getStart();
+      int end = start + taskWindow.getLength();
+      if (end > text.length()) {
+        continue;
+      }
+      String possibleAnswer = taskWindow.getPossibleAnswer();
+      windows.add(new Window(taskWindow, start, taskWindow.getLength(), text.substring(start, end),
+                             possibleAnswer != null ? possibleAnswer : ""));
+    }
+    return new StudyFileSnapshot(text, windows);
+  }
+
+  public List<Window> getWindows() {
+    return Collections.unmodifiableList(myWindows);
+  }
+
+  /**
+   * @return text typed by user
+   */
+  public Variant getUserVariant() {
+    return buildVariant(myWindows);
+  }
+
+  /**
+   * @return text where all the windows are replaced with possible answers
+   */
+  public Variant getAnswersVariant() {
+    return buildVariant(Collections.<Window>emptyList());
+  }
+
+  /**
+   * @return text where all the windows except specified one are replaced with possible answers
+   */
+  public Variant getVariantWithUserWindow(@NotNull final Window userWindow) {
+    return buildVariant(Collections.singletonList(userWindow));
+  }
+
+  /**
+   * @return text where specified windows contain text typed by user and the others contain possible answers
+   */
+  public Variant getVariantWithUserWindows(@NotNull final Collection<Window> userWindows) {
+    return buildVariant(userWindows);
+  }
+
+  private Variant buildVariant(@NotNull final Collection<Window> userWindows) {
+    Set<Window> userWindowSet = Collections.newSetFromMap(new IdentityHashMap<Window, Boolean>());
+    userWindowSet.addAll(userWindows);
+    StringBuilder text = new StringBuilder(myText.length());
+    List<String> windowTexts = new ArrayList<String>(myWindows.size());
+    int offset = 0;
+    for (Window window : myWindows) {
+      text.append(myText, offset, window.getStartOffset());
+      String windowText = userWindowSet.contains(window) ? window.getUserText() : window.getPossibleAnswer();
+      text.append(windowText);
+      windowTexts.add(windowText);
+      offset = window.getStartOffset() + window.getLength();
+    }
+    text.append(myText, offset, myText.length());
+    return new Variant(text.toString(), windowTexts);
+  }
+}
@@ -0,0 +1,157 @@
+package ru.compscicenter.edide;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Verdicts shared between identical submissions of different students in batch or server grading.
+ * Key is hash of normalized text of submission, so submissions which differ only in line endings,
+ * trailing spaces or trailing empty lines are graded once. If identical submission is being graded
+ * by another thread, its verdict is awaited instead of running tests again.
+ */
+public class StudyGradingCache {
+  /**
+   * System property with maximum number of kept verdicts
+   */
+  public static final String CACHE_SIZE_PROPERTY = "study.grading.cache.size";
+  private static final int DEFAULT_CACHE_SIZE = 10000;
+  private final int myMaxSize;
+  private final LinkedHashMap<String, Future<StudyCheckCache.Result>> myResults;
+  private final AtomicInteger myHits = new AtomicInteger();
+  private final AtomicInteger myMisses = new AtomicInteger();
+
+  public StudyGradingCache() {
+    this(Integer.getInteger(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE));
+  }
+
+  public StudyGradingCache(int maxSize) {
+    myMaxSize = Math.max(0, maxSize);
+    myResults = new LinkedHashMap<String, Future<StudyCheckCache.Result>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Future<StudyCheckCache.Result>> eldest) {
+        return size() > myMaxSize;
+      }
+    };
+  }
+
+  /**
+   * Texts of windows are trimmed as test helper does. Indentation and spaces inside lines
+   * are kept because they may change meaning of python code.
+   *
+   * @param taskPath        path of checked file relative to course, such as "lesson1/task2/file.py"
+   * @param testsText       text of tests.py of task
+   * @param taskFilesKey    key created by {@link ru.compscicenter.edide.StudyCheckCache#getTaskFilesKey}
+   * @param interpreterPath path to python interpreter which runs tests
+   * @return key of verdict for submission
+   */
+  @NotNull
+  public static String getKey(@NotNull final StudyFileSnapshot snapshot, @NotNull final String taskPath,
+                              @NotNull final String testsText, @NotNull final String taskFilesKey,
+                              @NotNull final String interpreterPath) {
+    List<String> parts = new ArrayList<String>();
+    Collections.addAll(parts, "submission", taskPath, interpreterPath, testsText, taskFilesKey,
+                       normalize(snapshot.getUserVariant().getText()));
+    for (StudyFileSnapshot.Window window : snapshot.getWindows()) {
+      parts.add(window.getTaskWindow().getIndex() + ":" + window.getUserText().trim());
+    }
+    return StudyCheckCache.hash(parts);
+  }
+
+  /**
+   * @return text with unix line endings and without trailing spaces and trailing empty lines
+   */
+  @NotNull
+  public static String normalize(@NotNull final String text) {
+    StringBuilder normalized = new StringBuilder(text.length());
+    for (String line : text.replace("\r\n", "\n").replace('\r', '\n').split("\n")) {
+      int end = line.length();
+      while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+        end--;
+      }
+      normalized.append(line, 0, end).append('\n');
+    }
+    int length = normalized.length();
+    while (length > 0 && normalized.charAt(length - 1) == '\n') {
+      length--;
+    }
+    normalized.setLength(length);
+    return normalized.toString();
+  }
+
+  /**
+   * Returns verdict of identical submission or grades this one. Verdicts of submissions which exceeded
+   * time limit and failed gradings aren't kept, because they may depend on load of machine.
+   *
+   * @param grader grades submission if its verdict isn't known
+   * @throws ExecutionException       if grader failed
+   * @throws ProcessCanceledException if thread was interrupted while waiting for verdict
+   */
+  @NotNull
+  public StudyCheckCache.Result grade(@NotNull final String key, @NotNull final Callable<StudyCheckCache.Result> grader)
+    throws ExecutionException {
+    FutureTask<StudyCheckCache.Result> task = new FutureTask<StudyCheckCache.Result>(grader);
+    Future<StudyCheckCache.Result> existing;
+    synchronized (myResults) {
+      existing = myResults.get(key);
+      if (existing == null) {
+        myResults.put(key, task);
+      }
+    }
+    try {
+      if (existing != null) {
+        myHits.incrementAndGet();
+        return existing.get();
+      }
+      myMisses.incrementAndGet();
+      task.run();
+      StudyCheckCache.Result result = task.get();
+      if (result.getFailedMessage().equals(StudyProcessManager.TIME_LIMIT_EXCEEDED)) {
+        remove(key, task);
+      }
+      return result;
+    }
+    catch (ExecutionException e) {
+      remove(key, task);
+      throw e;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ProcessCanceledException();
+    }
+  }
+
+  private void remove(@NotNull final String key, @NotNull final Future<StudyCheckCache.Result> task) {
+    synchronized (myResults) {
+      if (myResults.get(key) == task) {
+        myResults.remove(key);
+      }
+    }
+  }
+
+  /**
+   * @return number of submissions which got verdict of identical submission
+   */
+  public int getHits() {
+    return myHits.get();
+  }
+
+  /**
+   * @return number of submissions which were graded
+   */
+  public int getMisses() {
+    return myMisses.get();
+  }
+
+  public int size() {
+    synchronized (myResults) {
+      return myResults.size();
+    }
+  }
+}
@@ -0,0 +1,399 @@
+package ru.compscicenter.edide;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.intellij.openapi.util.io.FileUtil;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.compscicenter.edide.course.Task;
+import ru.compscicenter.edide.course.TaskFile;
+import ru.compscicenter.edide.course.TaskWindow;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Local HTTP service which checks task files submitted by lab machines, so tests are run on
+ * server instead of student laptops. Submission is POSTed to {@link ru.compscicenter.edide.StudyGradingServer#CHECK_PATH}
+ * as json {@link ru.compscicenter.edide.StudyGradingServer.Submission} and verdict is returned as json
+ * {@link ru.compscicenter.edide.StudyBatchGrader.TaskResult}. Submissions are checked by fixed number of threads,
+ * waiting submissions are kept in bounded queue and submission is rejected with 429 status when queue is full.
+ * <p/>
+ * Usage: StudyGradingServer --course &lt;course dir&gt;... [--python &lt;interpreter&gt;] [--host &lt;address&gt;]
+ * [--port N] [--threads N] [--queue N]
+ */
+public class StudyGradingServer {
+  public static final String CHECK_PATH = "/check";
+  public static final String STATUS_PATH = "/status";
+  public static final int DEFAULT_PORT = 8123;
+  public static final int DEFAULT_QUEUE_CAPACITY = 64;
+  public static final int TOO_MANY_REQUESTS = 429;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private final HttpServer myServer;
+  private final ThreadPoolExecutor myExecutor;
+  private final ExecutorService myHttpExecutor;
+  private final Grader myGrader;
+  private final Gson myGson = new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES).create();
+
+  /**
+   * Text of task file submitted for check
+   */
+  public static class Submission {
+    /**
+     * Name of course, it may be omitted if server checks only one course
+     */
+    public String course;
+    public int lesson;
+    public int task;
+    public String file;
+    public String text;
+    /**
+     * Positions of task windows in text, initial positions are used if they aren't specified
+     */
+    public List<WindowPosition> windows;
+  }
+
+  public static class WindowPosition {
+    public int line;
+    public int start;
+    public int length;
+  }
+
+  /**
+   * Checks submission, it's called on threads of server
+   */
+  public interface Grader {
+    /**
+     * @throws IllegalArgumentException if submission doesn't match any task
+     */
+    @NotNull
+    StudyBatchGrader.TaskResult grade(@NotNull final Submission submission);
+  }
+
+  /**
+   * @param threads       number of submissions checked at the same time
+   * @param queueCapacity number of submissions waiting for check
+   */
+  public StudyGradingServer(@NotNull final InetSocketAddress address, @NotNull final Grader grader, int threads, int queueCapacity)
+    throws IOException {
+    myGrader = grader;
+    myExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                                        new ArrayBlockingQueue<Runnable>(Math.max(1, queueCapacity)),
+                                        new NamedThreadFactory("Study grading"));
+    myHttpExecutor = Executors.newCachedThreadPool(new NamedThreadFactory("Study grading http"));
+    myServer = HttpServer.create(address, 0);
+    myServer.setExecutor(myHttpExecutor);
+    myServer.createContext(CHECK_PATH, new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        handleCheck(exchange);
+      }
+    });
+    myServer.createContext(STATUS_PATH, new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        JsonObject status = new JsonObject();
+        status.addProperty("running", myExecutor.getActiveCount());
+        status.addProperty("queued", getQueueSize());
+        status.addProperty("completed", myExecutor.getCompletedTaskCount());
+        respond(exchange, 200, status.toString());
+      }
+    });
+  }
+
+  private static class NamedThreadFactory implements ThreadFactory {
+    private final String myName;
+    private int myThreadCount = 0;
+
+    NamedThreadFactory(@NotNull final String name) {
+      myName = name;
+    }
+
+    @Override
+    public synchronized Thread newThread(@NotNull final Runnable runnable) {
+      Thread thread = new Thread(runnable, myName + " " + (++myThreadCount));
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+  public void start() {
+    myServer.start();
+  }
+
+  public void stop() {
+    myServer.stop(0);
+    myExecutor.shutdownNow();
+    myHttpExecutor.shutdownNow();
+  }
+
+  public int getPort() {
+    return myServer.getAddress().getPort();
+  }
+
+  /**
+   * @return number of submissions waiting for check
+   */
+  public int getQueueSize() {
+    return myExecutor.getQueue().size();
+  }
+
+  private void handleCheck(@NotNull final HttpExchange exchange) throws IOException {
+    if (!"POST".equals(exchange.getRequestMethod())) {
+      respondError(exchange, 405, "submission should be posted");
+      return;
+    }
+    final Submission submission;
+    try {
+      submission = myGson.fromJson(new InputStreamReader(exchange.getRequestBody(), UTF_8), Submission.class);
+    }
+    catch (JsonParseException e) {
+      respondError(exchange, 400, "malformed submission: " + e.getMessage());
+      return;
+    }
+    if (submission == null || submission.file == null || submission.text == null) {
+      respondError(exchange, 400, "submission should contain lesson, task, file and text");
+      return;
+    }
+    Future<StudyBatchGrader.TaskResult> result;
+    try {
+      result = myExecutor.submit(new Callable<StudyBatchGrader.TaskResult>() {
+        @Override
+        public StudyBatchGrader.TaskResult call() {
+          return myGrader.grade(submission);
+        }
+      });
+    }
+    catch (RejectedExecutionException e) {
+      exchange.getResponseHeaders().add("Retry-After", "1");
+      respondError(exchange, TOO_MANY_REQUESTS, "queue is full");
+      return;
+    }
+    try {
+      respond(exchange, 200, myGson.toJson(result.get()));
+    }
+    catch (ExecutionException e) {
+      if (e.getCause() instanceof IllegalArgumentException) {
+        respondError(exchange, 400, e.getCause().getMessage());
+      }
+      else {
+        respondError(exchange, 500, String.valueOf(e.getCause()));
+      }
+    }
+    catch (InterruptedException e) {
+      result.cancel(true);
+      respondError(exchange, 503, "server is stopping");
+    }
+  }
+
+  private static void respondError(@NotNull final HttpExchange exchange, int code, @NotNull final String message) throws IOException {
+    JsonObject error = new JsonObject();
+    error.addProperty("error", message);
+    respond(exchange, code, error.toString());
+  }
+
+  private static void respond(@NotNull final HttpExchange exchange, int code, @NotNull final String body) throws IOException {
+    byte[] bytes = body.getBytes(UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(code, bytes.length);
+    OutputStream output = exchange.getResponseBody();
+    try {
+      output.write(bytes);
+    }
+    finally {
+      output.close();
+    }
+  }
+
+  /**
+   * Checks submissions against courses loaded by {@link ru.compscicenter.edide.StudyBatchGrader}.
+   * Each course has its own pool of warm workers, one per checking thread.
+   */
+  private static class CourseGrader implements Grader {
+    private final Map<String, StudyBatchGrader> myGraders = new HashMap<String, StudyBatchGrader>();
+    private final Map<String, BlockingQueue<WorkerSlot>> myWorkers = new HashMap<String, BlockingQueue<WorkerSlot>>();
+
+    private static class WorkerSlot {
+      private StudyTestWorker myWorker;
+    }
+
+    CourseGrader(@NotNull final List<StudyBatchGrader> graders, int threads) {
+      for (StudyBatchGrader grader : graders) {
+        String name = grader.getCourse().getName();
+        myGraders.put(name, grader);
+        BlockingQueue<WorkerSlot> workers = new ArrayBlockingQueue<WorkerSlot>(threads);
+        for (int i = 0; i < threads; i++) {
+          WorkerSlot slot = new WorkerSlot();
+          slot.myWorker = grader.createWorker();
+          workers.add(slot);
+        }
+        myWorkers.put(name, workers);
+      }
+    }
+
+    @NotNull
+    @Override
+    public StudyBatchGrader.TaskResult grade(@NotNull final Submission submission) {
+      String course = submission.course;
+      if (course == null && myGraders.size() == 1) {
+        course = myGraders.keySet().iterator().next();
+      }
+      StudyBatchGrader grader = course != null ? myGraders.get(course) : null;
+      if (grader == null) {
+        throw new IllegalArgumentException("unknown course " + submission.course);
+      }
+      Task task = grader.findTask(submission.lesson, submission.task);
+      TaskFile taskFile = task != null ? task.getFile(submission.file) : null;
+      if (taskFile == null) {
+        throw new IllegalArgumentException("unknown task file " + submission.file);
+      }
+      if (submission.windows != null && submission.windows.size() != taskFile.getTaskWindows().size()) {
+        throw new IllegalArgumentException("task file " + submission.file + " has " + taskFile.getTaskWindows().size() +
+                                           " windows, positions of " + submission.windows.size() + " are submitted");
+      }
+      // submitted code is run in empty directory, so it can't overwrite tests and test helper of course
+      File workDir;
+      try {
+        workDir = FileUtil.createTempDirectory("study_grading", null);
+      }
+      catch (IOException e) {
+        throw new IllegalStateException("failed to create directory for check", e);
+      }
+      BlockingQueue<WorkerSlot> workers = myWorkers.get(course);
+      WorkerSlot slot;
+      try {
+        slot = workers.take();
+      }
+      catch (InterruptedException e) {
+        FileUtil.delete(workDir);
+        throw new IllegalStateException("server is stopping");
+      }
+      try {
+        if (slot.myWorker == null || !slot.myWorker.isAlive()) {
+          if (slot.myWorker != null) {
+            slot.myWorker.stop();
+          }
+          slot.myWorker = grader.createWorker();
+        }
+        return grader.check(task, submission.file, submission.text, getStateTaskFile(submission), workDir, slot.myWorker);
+      }
+      finally {
+        workers.add(slot);
+        FileUtil.delete(workDir);
+      }
+    }
+
+    @Nullable
+    private static TaskFile getStateTaskFile(@NotNull final Submission submission) {
+      if (submission.windows == null) {
+        return null;
+      }
+      TaskFile taskFile = new TaskFile();
+      for (WindowPosition position : submission.windows) {
+        TaskWindow window = new TaskWindow();
+        window.setLine(position.line);
+        window.setStart(position.start);
+        window.setLength(position.length);
+        taskFile.getTaskWindows().add(window);
+      }
+      return taskFile;
+    }
+
+    void dispose() {
+      for (BlockingQueue<WorkerSlot> workers : myWorkers.values()) {
+        for (WorkerSlot slot : workers) {
+          if (slot.myWorker != null) {
+            slot.myWorker.stop();
+          }
+        }
+      }
+    }
+  }
+
+  private static void printUsage() {
+    System.err.println("Usage: StudyGradingServer --course <course dir>... [--python <interpreter>] [--host <address>] " +
+                       "[--port N] [--threads N] [--queue N]");
+  }
+
+  public static void main(String[] args) throws Exception {
+    List<File> courseDirs = new ArrayList<File>();
+    String pythonPath = "python";
+    String host = "127.0.0.1";
+    int port = DEFAULT_PORT;
+    int threads = Runtime.getRuntime().availableProcessors();
+    int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    try {
+      for (int i = 0; i < args.length; i++) {
+        if (args[i].equals("--course")) {
+          courseDirs.add(new File(args[++i]));
+        }
+        else if (args[i].equals("--python")) {
+          pythonPath = args[++i];
+        }
+        else if (args[i].equals("--host")) {
+          host = args[++i];
+        }
+        else if (args[i].equals("--port")) {
+          port = Integer.parseInt(args[++i]);
+        }
+        else if (args[i].equals("--threads")) {
+          threads = Math.max(1, Integer.parseInt(args[++i]));
+        }
+        else if (args[i].equals("--queue")) {
+          queueCapacity = Math.max(1, Integer.parseInt(args[++i]));
+        }
+        else {
+          courseDirs.clear();
+          break;
+        }
+      }
+    }
+    catch (ArrayIndexOutOfBoundsException e) {
+      courseDirs.clear();
+    }
+    catch (NumberFormatException e) {
+      courseDirs.clear();
+    }
+    if (courseDirs.isEmpty()) {
+      printUsage();
+      System.exit(2);
+    }
+    if (System.getProperty(StudyUtils.CHECK_THREADS_PROPERTY) == null) {
+      System.setProperty(StudyUtils.CHECK_THREADS_PROPERTY, String.valueOf(threads));
+    }
+
+    StudyGradingCache gradingCache = new StudyGradingCache();
+    List<StudyBatchGrader> graders = new ArrayList<StudyBatchGrader>();
+    for (File courseDir : courseDirs) {
+      graders.add(new StudyBatchGrader(courseDir, pythonPath, gradingCache));
+    }
+    final CourseGrader grader = new CourseGrader(graders, threads);
+    final StudyGradingServer server = new StudyGradingServer(new InetSocketAddress(InetAddress.getByName(host), port), grader,
+                                                             threads, queueCapacity);
+    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+      @Override
+      public void run() {
+        server.stop();
+        grader.dispose();
+      }
+    }));
+    server.start();
+    System.err.println("grading server is listening on " + host + ":" + server.getPort());
+  }
+}
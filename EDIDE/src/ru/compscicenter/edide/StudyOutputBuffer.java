@@ -0,0 +1,75 @@
+package ru.compscicenter.edide;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Bounded buffer for output of process. The first characters of output are kept
+ * in head and the last ones in ring buffer, characters between them are skipped.
+ */
+public class StudyOutputBuffer {
+  public static final int DEFAULT_CAPACITY = 16 * 1024;
+  private final int myHeadCapacity;
+  private final StringBuilder myHead = new StringBuilder();
+  private final char[] myTail;
+  private int myTailStart = 0;
+  private int myTailSize = 0;
+  private long mySkipped = 0;
+
+  public StudyOutputBuffer() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param capacity maximum number of kept characters, half of them is kept in head
+   */
+  public StudyOutputBuffer(int capacity) {
+    myHeadCapacity = capacity / 2;
+    myTail = new char[Math.max(1, capacity - myHeadCapacity)];
+  }
+
+  public synchronized void append(@NotNull final CharSequence text) {
+    int start = 0;
+    if (myHead.length() < myHeadCapacity) {
+      start = Math.min(text.length(), myHeadCapacity - myHead.length());
+      myHead.append(text, 0, start);
+    }
+    for (int i = start; i < text.length(); i++) {
+      if (myTailSize < myTail.length) {
+        myTail[(myTailStart + myTailSize) % myTail.length] = text.charAt(i);
+        myTailSize++;
+      }
+      else {
+        myTail[myTailStart] = text.charAt(i);
+        myTailStart = (myTailStart + 1) % myTail.length;
+        mySkipped++;
+      }
+    }
+  }
+
+  public synchronized boolean isEmpty() {
+    return myHead.length() == 0;
+  }
+
+  /**
+   * @return number of characters which weren't kept
+   */
+  public synchronized long getSkipped() {
+    return mySkipped;
+  }
+
+  /**
+   * @return kept output, skipped part is replaced with a note
+   */
+  @NotNull
+  public synchronized String getText() {
+    StringBuilder text = new StringBuilder(myHead.length() + myTailSize + 50);
+    text.append(myHead);
+    if (mySkipped > 0) {
+      text.append("\n... ").append(mySkipped).append(" characters skipped ...\n");
+    }
+    for (int i = 0; i < myTailSize; i++) {
+      text.append(myTail[(myTailStart + i) % myTail.length]);
+    }
+    return text.toString();
+  }
+}
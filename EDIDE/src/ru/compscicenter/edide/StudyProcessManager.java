@@ -0,0 +1,345 @@
+package ru.compscicenter.edide;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.execution.process.OSProcessManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.compscicenter.edide.course.Course;
+import ru.compscicenter.edide.course.ResourceLimits;
+import ru.compscicenter.edide.course.Task;
+
+import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Controls lifetime of processes started to run or check tasks: process is killed
+ * together with its children when it exceeds time limit of course or when thread
+ * waiting for it is interrupted, and it's always killed when it's not needed anymore.
+ * Output streams of processes are drained by pumps on shared threads.
+ * On unix processes are started by {@link ru.compscicenter.edide.StudyResourceManger#STUDY_SANDBOX}
+ * which applies resource limits of course and task.
+ */
+public class StudyProcessManager {
+  private static final Logger LOG = Logger.getInstance(StudyProcessManager.class.getName());
+  public static final String TIME_LIMIT_EXCEEDED = "Time limit exceeded";
+  /**
+   * Time limit in seconds used if course doesn't specify it
+   */
+  public static final int DEFAULT_TIME_LIMIT = 10;
+  /**
+   * Sandbox reports exceeded resource limit in the last line of stderr with this prefix
+   */
+  public static final String LIMIT_PREFIX = "#study_plugin_limit ";
+  /**
+   * Limits used if course and task don't specify them, memory is in megabytes and output in kilobytes
+   */
+  public static final int DEFAULT_MEMORY_LIMIT = 1024;
+  public static final int DEFAULT_OUTPUT_LIMIT = 8 * 1024;
+  private static final long POLL_INTERVAL = 100;
+  /**
+   * Longer lines are truncated when they are passed to line listener
+   */
+  private static final int MAX_LINE_LENGTH = 1024 * 1024;
+  private static ScheduledExecutorService ourWatchdog = null;
+  private static ExecutorService ourPumpExecutor = null;
+  private static File ourScriptDir = null;
+
+  /**
+   * Gets lines of process output read by pump
+   */
+  public interface LineListener {
+    void lineRead(@NotNull final String line);
+  }
+
+  private StudyProcessManager() {
+  }
+
+  /**
+   * @return time limit of one run of task in milliseconds
+   */
+  public static long getTimeLimit(@Nullable final Course course) {
+    int timeLimit = course != null ? course.getTimeLimit() : 0;
+    return TimeUnit.SECONDS.toMillis(timeLimit > 0 ? timeLimit : DEFAULT_TIME_LIMIT);
+  }
+
+  /**
+   * @return limits of resources for task, limits of task override limits of course
+   */
+  @NotNull
+  public static ResourceLimits getLimits(@Nullable final Course course, @Nullable final Task task) {
+    ResourceLimits limits = new ResourceLimits(DEFAULT_MEMORY_LIMIT, 0, 0, 0, DEFAULT_OUTPUT_LIMIT);
+    if (course != null) {
+      limits = limits.merge(course.getLimits());
+    }
+    if (task != null) {
+      limits = limits.merge(task.getLimits());
+    }
+    return limits;
+  }
+
+  @NotNull
+  public static JsonElement toJson(@NotNull final ResourceLimits limits) {
+    return new GsonBuilder().setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES).create().toJsonTree(limits);
+  }
+
+  /**
+   * Creates command line which runs the same command in sandbox. Limits aren't applied on windows
+   *
+   * @param commandLine command line starting python interpreter
+   */
+  @NotNull
+  public static GeneralCommandLine withLimits(@NotNull final GeneralCommandLine commandLine, @NotNull final ResourceLimits limits) {
+    if (SystemInfo.isWindows) {
+      return commandLine;
+    }
+    File sandbox = getScriptFile(StudyResourceManger.STUDY_SANDBOX);
+    if (sandbox == null) {
+      return commandLine;
+    }
+    GeneralCommandLine sandboxed = new GeneralCommandLine();
+    sandboxed.setExePath(commandLine.getExePath());
+    sandboxed.setWorkDirectory(commandLine.getWorkDirectory());
+    sandboxed.getEnvironment().putAll(commandLine.getEnvironment());
+    sandboxed.addParameter(sandbox.getPath());
+    sandboxed.addParameter(toJson(limits).toString());
+    sandboxed.addParameter(commandLine.getExePath());
+    sandboxed.addParameters(commandLine.getParametersList().getList());
+    return sandboxed;
+  }
+
+  /**
+   * @return message about resource limit reported by sandbox or null
+   */
+  @Nullable
+  public static String getExceededLimit(@NotNull final String errorOutput) {
+    int index = errorOutput.lastIndexOf(LIMIT_PREFIX);
+    if (index < 0 || (index > 0 && errorOutput.charAt(index - 1) != '\n')) {
+      return null;
+    }
+    return errorOutput.substring(index + LIMIT_PREFIX.length()).trim();
+  }
+
+  /**
+   * Copies python script from resources of plugin to temporary directory,
+   * all scripts are copied to the same directory so they can import each other
+   */
+  @Nullable
+  public static synchronized File getScriptFile(@NotNull final String name) {
+    try {
+      if (ourScriptDir == null || !ourScriptDir.exists()) {
+        ourScriptDir = FileUtil.createTempDirectory("study_scripts", null, true);
+      }
+    }
+    catch (IOException e) {
+      LOG.error(e);
+      return null;
+    }
+    File scriptFile = new File(ourScriptDir, name);
+    if (scriptFile.exists()) {
+      return scriptFile;
+    }
+    InputStream scriptStream = StudyProcessManager.class.getResourceAsStream(name);
+    if (scriptStream == null) {
+      LOG.error("failed to find " + name);
+      return null;
+    }
+    OutputStream outputStream = null;
+    try {
+      outputStream = new FileOutputStream(scriptFile);
+      FileUtil.copy(scriptStream, outputStream);
+      return scriptFile;
+    }
+    catch (IOException e) {
+      LOG.error(e);
+      FileUtil.delete(scriptFile);
+      return null;
+    }
+    finally {
+      StudyUtils.closeSilently(outputStream);
+      StudyUtils.closeSilently(scriptStream);
+    }
+  }
+
+  private static synchronized ScheduledExecutorService getWatchdog() {
+    if (ourWatchdog == null) {
+      ourWatchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NotNull final Runnable runnable) {
+          Thread thread = new Thread(runnable, "Study process watchdog");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return ourWatchdog;
+  }
+
+  /**
+   * Watch of one process, it should be finished when process output isn't needed anymore
+   */
+  public static class Watch {
+    private final Process myProcess;
+    private final Thread myOwner;
+    private final long myDeadline;
+    private volatile boolean myTimedOut = false;
+    private volatile boolean myFinished = false;
+    private volatile ScheduledFuture<?> myCheck;
+
+    private Watch(@NotNull final Process process, long timeLimit, @Nullable final Thread owner) {
+      myProcess = process;
+      myOwner = owner;
+      myDeadline = System.currentTimeMillis() + timeLimit;
+    }
+
+    private void check() {
+      if (myFinished) {
+        if (myCheck != null) {
+          myCheck.cancel(false);
+        }
+        return;
+      }
+      if (System.currentTimeMillis() >= myDeadline) {
+        myTimedOut = true;
+        finish();
+      }
+      else if (myOwner != null && myOwner.isInterrupted()) {
+        finish();
+      }
+    }
+
+    /**
+     * @return true if process was killed because it exceeded time limit
+     */
+    public boolean isTimedOut() {
+      return myTimedOut;
+    }
+
+    /**
+     * Stops watching and kills process tree if it's still alive
+     */
+    public void finish() {
+      myFinished = true;
+      if (myCheck != null) {
+        myCheck.cancel(false);
+      }
+      destroyProcessTree(myProcess);
+    }
+  }
+
+  /**
+   * Starts watching process
+   *
+   * @param timeLimit time limit in milliseconds
+   * @param owner     thread waiting for process, process is killed if it's interrupted
+   */
+  @NotNull
+  public static Watch watch(@NotNull final Process process, long timeLimit, @Nullable final Thread owner) {
+    final Watch watch = new Watch(process, timeLimit, owner);
+    watch.myCheck = getWatchdog().scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        watch.check();
+      }
+    }, POLL_INTERVAL, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+    return watch;
+  }
+
+  private static synchronized ExecutorService getPumpExecutor() {
+    if (ourPumpExecutor == null) {
+      ourPumpExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger myThreadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NotNull final Runnable runnable) {
+          Thread thread = new Thread(runnable, "Study output pump " + myThreadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return ourPumpExecutor;
+  }
+
+  /**
+   * Reads stream until its end in background
+   *
+   * @param buffer   buffer output is captured to
+   * @param listener gets output line by line
+   * @return future which is done when stream is read
+   */
+  @NotNull
+  public static Future<?> pump(@NotNull final InputStream stream, @Nullable final StudyOutputBuffer buffer,
+                               @Nullable final LineListener listener) {
+    return getPumpExecutor().submit(new Callable<Void>() {
+      @Override
+      public Void call() throws IOException {
+        Reader reader = new InputStreamReader(stream, Charset.forName("UTF-8"));
+        try {
+          char[] chunk = new char[8192];
+          StringBuilder line = new StringBuilder();
+          int read;
+          while ((read = reader.read(chunk)) >= 0) {
+            if (buffer != null) {
+              buffer.append(CharBuffer.wrap(chunk, 0, read));
+            }
+            if (listener != null) {
+              for (int i = 0; i < read; i++) {
+                char c = chunk[i];
+                if (c == '\n') {
+                  listener.lineRead(trimLineEnd(line));
+                  line.setLength(0);
+                }
+                else if (line.length() < MAX_LINE_LENGTH) {
+                  line.append(c);
+                }
+              }
+            }
+          }
+          if (listener != null && line.length() > 0) {
+            listener.lineRead(trimLineEnd(line));
+          }
+        }
+        finally {
+          StudyUtils.closeSilently(reader);
+        }
+        return null;
+      }
+    });
+  }
+
+  private static String trimLineEnd(@NotNull final StringBuilder line) {
+    int length = line.length();
+    return length > 0 && line.charAt(length - 1) == '\r' ? line.substring(0, length - 1) : line.toString();
+  }
+
+  public static void destroyProcessTree(@NotNull final Process process) {
+    if (isAlive(process)) {
+      try {
+        OSProcessManager.getInstance().killProcessTree(process);
+      }
+      catch (RuntimeException e) {
+        LOG.info(e);
+      }
+    }
+    process.destroy();
+  }
+
+  private static boolean isAlive(@NotNull final Process process) {
+    try {
+      process.exitValue();
+      return false;
+    }
+    catch (IllegalThreadStateException e) {
+      return true;
+    }
+  }
+}
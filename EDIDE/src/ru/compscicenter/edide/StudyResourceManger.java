@@ -2,4 +2,6 @@ package ru.compscicenter.edide;
 
 public interface StudyResourceManger {
   String USER_TESTER = "user_tester.py";
+  String STUDY_WORKER = "study_worker.py";
+  String STUDY_SANDBOX = "study_sandbox.py";
 }
@@ -5,16 +5,17 @@ import com.intellij.openapi.actionSystem.*;
 import com.intellij.openapi.actionSystem.ex.AnActionListener;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.*;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.ex.DocumentBulkUpdateListener;
 import com.intellij.openapi.keymap.Keymap;
 import com.intellij.openapi.keymap.KeymapManager;
 import com.intellij.openapi.project.DumbAware;
 import com.intellij.openapi.project.DumbAwareRunnable;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.openapi.vfs.VirtualFileAdapter;
-import com.intellij.openapi.vfs.VirtualFileEvent;
-import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.*;
 import com.intellij.openapi.wm.ToolWindow;
 import com.intellij.openapi.wm.ToolWindowAnchor;
 import com.intellij.openapi.wm.ToolWindowManager;
@@ -30,14 +31,20 @@ import ru.compscicenter.edide.course.Course;
 import ru.compscicenter.edide.course.Lesson;
 import ru.compscicenter.edide.course.Task;
 import ru.compscicenter.edide.course.TaskFile;
+import ru.compscicenter.edide.editor.StudyEditor;
 import ru.compscicenter.edide.ui.StudyCondition;
 import ru.compscicenter.edide.ui.StudyToolWindowFactory;
 
 import javax.swing.*;
+import java.io.File;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Implementation of class which contains all the information
@@ -54,16 +61,34 @@ import java.util.Map;
     )}
 )
 public class StudyTaskManager implements ProjectComponent, PersistentStateComponent<Element>, DumbAware {
+  private static final Logger LOG = Logger.getInstance(StudyTaskManager.class.getName());
   public static final String COURSE_ELEMENT = "courseElement";
+  /**
+   * Time after which worker is started again for interpreter it failed to start with
+   */
+  private static final long WORKER_RETRY_INTERVAL = TimeUnit.MINUTES.toMillis(1);
   private static Map<String, StudyTaskManager> myTaskManagers = new HashMap<String, StudyTaskManager>();
   private static Map<String, String> myDeletedShortcuts = new HashMap<String, String>();
   private final Project myProject;
   private Course myCourse;
   private FileCreatedListener myListener;
+  /**
+   * Guards state of test worker, it's never held while worker is starting
+   */
+  private final Object myWorkerLock = new Object();
+  private FutureTask<StudyTestWorker> myTestWorker;
+  private String myFailedWorkerPythonPath;
+  private long myWorkerFailureTime;
+  private StudyCheckCache myCheckCache;
+  private volatile Map<String, TaskFile> myTaskFileIndex;
 
 
   public void setCourse(Course course) {
     myCourse = course;
+    invalidateTaskFileIndex();
+    synchronized (myWorkerLock) {
+      myFailedWorkerPythonPath = null;
+    }
   }
 
   private StudyTaskManager(@NotNull final Project project) {
@@ -82,6 +107,13 @@ public class StudyTaskManager implements ProjectComponent, PersistentStateCompon
   public Element getState() {
     Element el = new Element("taskManager");
     if (myCourse != null) {
+      for (Lesson lesson : myCourse.getLessons()) {
+        for (Task task : lesson.getTaskList()) {
+          for (TaskFile taskFile : task.getTaskFiles().values()) {
+            taskFile.updateWindowPositions();
+          }
+        }
+      }
       Element courseElement = new Element(COURSE_ELEMENT);
       XmlSerializer.serializeInto(myCourse, courseElement);
       el.addContent(courseElement);
@@ -95,6 +127,7 @@ public class StudyTaskManager implements ProjectComponent, PersistentStateCompon
     if (myCourse != null) {
       myCourse.init(true);
     }
+    invalidateTaskFileIndex();
   }
 
   @Override
@@ -156,6 +189,8 @@ public class StudyTaskManager implements ProjectComponent, PersistentStateCompon
   @Override
   public void projectClosed() {
     StudyCondition.VALUE = false;
+    stopTestWorker();
+    saveCheckCache();
     if (myCourse != null) {
       ToolWindowManager.getInstance(myProject).getToolWindow(StudyToolWindowFactory.STUDY_TOOL_WINDOW).getContentManager()
         .removeAllContents(false);
@@ -172,6 +207,25 @@ public class StudyTaskManager implements ProjectComponent, PersistentStateCompon
   @Override
   public void initComponent() {
     EditorFactory.getInstance().addEditorFactoryListener(new StudyEditorFactoryListener(), myProject);
+    VirtualFileManager.getInstance().addVirtualFileListener(new TaskFileIndexUpdater(), myProject);
+    ApplicationManager.getApplication().getMessageBus().connect(myProject)
+      .subscribe(DocumentBulkUpdateListener.TOPIC, new DocumentBulkUpdateListener.Adapter() {
+        @Override
+        public void updateStarted(@NotNull final Document doc) {
+          StudyDocumentListener listener = StudyEditor.getListener(doc);
+          if (listener != null) {
+            listener.bulkUpdateStarted(doc);
+          }
+        }
+
+        @Override
+        public void updateFinished(@NotNull final Document doc) {
+          StudyDocumentListener listener = StudyEditor.getListener(doc);
+          if (listener != null) {
+            listener.bulkUpdateFinished(doc);
+          }
+        }
+      });
     ActionManager.getInstance().addAnActionListener(new AnActionListener() {
       @Override
       public void beforeActionPerformed(AnAction action, DataContext dataContext, AnActionEvent event) {
@@ -218,8 +272,194 @@ public class StudyTaskManager implements ProjectComponent, PersistentStateCompon
   }
 
 
+  /**
+   * Gets warm test worker of project, worker is started lazily and restarted if it died
+   * or if interpreter of project was changed. If worker failed to start, it isn't started
+   * with the same interpreter again until course is changed or retry interval passes.
+   * Worker is started by the first thread which needs it, other threads wait for it without holding any lock.
+   *
+   * @return worker or null if it can't be used with specified interpreter
+   */
+  @Nullable
+  public StudyTestWorker getTestWorker(@NotNull final String pythonPath, @Nullable final String pythonPathEnv) {
+    FutureTask<StudyTestWorker> workerStart;
+    boolean starting = false;
+    synchronized (myWorkerLock) {
+      if (pythonPath.equals(myFailedWorkerPythonPath)) {
+        if (System.currentTimeMillis() - myWorkerFailureTime < WORKER_RETRY_INTERVAL) {
+          return null;
+        }
+        myFailedWorkerPythonPath = null;
+      }
+      if (myTestWorker != null && myTestWorker.isDone()) {
+        StudyTestWorker worker = getStartedWorker(myTestWorker);
+        if (worker == null || !worker.isAlive() || !worker.isCompatible(pythonPath, pythonPathEnv)) {
+          if (worker != null) {
+            worker.stop();
+          }
+          myTestWorker = null;
+        }
+      }
+      if (myTestWorker == null) {
+        myTestWorker = new FutureTask<StudyTestWorker>(new Callable<StudyTestWorker>() {
+          @Override
+          public StudyTestWorker call() {
+            return StudyTestWorker.start(pythonPath, pythonPathEnv);
+          }
+        });
+        starting = true;
+      }
+      workerStart = myTestWorker;
+    }
+    if (starting) {
+      workerStart.run();
+      workerStarted(workerStart, pythonPath);
+    }
+    StudyTestWorker worker = getStartedWorker(workerStart);
+    return worker != null && worker.isCompatible(pythonPath, pythonPathEnv) ? worker : null;
+  }
+
+  private void workerStarted(@NotNull final FutureTask<StudyTestWorker> workerStart, @NotNull final String pythonPath) {
+    StudyTestWorker worker = getStartedWorker(workerStart);
+    synchronized (myWorkerLock) {
+      if (worker == null) {
+        // start interrupted by cancelled check isn't a failure of interpreter
+        if (!Thread.currentThread().isInterrupted()) {
+          myFailedWorkerPythonPath = pythonPath;
+          myWorkerFailureTime = System.currentTimeMillis();
+        }
+        if (myTestWorker == workerStart) {
+          myTestWorker = null;
+        }
+      }
+      else if (myTestWorker != workerStart) {
+        // worker was stopped while it was starting
+        worker.stop();
+      }
+    }
+  }
+
+  /**
+   * Waits until worker is started
+   *
+   * @return started worker or null if it failed to start or waiting thread was interrupted
+   */
+  @Nullable
+  private static StudyTestWorker getStartedWorker(@NotNull final FutureTask<StudyTestWorker> workerStart) {
+    try {
+      return workerStart.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+    catch (java.util.concurrent.ExecutionException e) {
+      LOG.info(e.getCause());
+      return null;
+    }
+  }
+
+  /**
+   * Stops worker, worker which is still starting is stopped by thread starting it
+   */
+  private void stopTestWorker() {
+    FutureTask<StudyTestWorker> workerStart;
+    synchronized (myWorkerLock) {
+      workerStart = myTestWorker;
+      myTestWorker = null;
+    }
+    if (workerStart != null && workerStart.isDone()) {
+      StudyTestWorker worker = getStartedWorker(workerStart);
+      if (worker != null) {
+        worker.stop();
+      }
+    }
+  }
+
+  /**
+   * Gets cache of check results of project, cache saved in project config directory
+   * is loaded on first call
+   */
+  @NotNull
+  public synchronized StudyCheckCache getCheckCache() {
+    if (myCheckCache == null) {
+      myCheckCache = new StudyCheckCache();
+      File cacheFile = getCheckCacheFile();
+      if (cacheFile != null) {
+        myCheckCache.load(cacheFile);
+      }
+    }
+    return myCheckCache;
+  }
+
+  private synchronized void saveCheckCache() {
+    File cacheFile = getCheckCacheFile();
+    if (myCheckCache != null && cacheFile != null) {
+      myCheckCache.save(cacheFile);
+    }
+  }
+
+  /**
+   * @return file next to study_project.xml or null if cache shouldn't be saved
+   */
+  @Nullable
+  private File getCheckCacheFile() {
+    String basePath = myProject.getBasePath();
+    if (basePath == null || !StudyCheckCache.isPersistent()) {
+      return null;
+    }
+    return new File(new File(basePath, Project.DIRECTORY_STORE_FOLDER), StudyCheckCache.CACHE_FILE);
+  }
+
+  /**
+   * Finds task file by index of course files, it's a single hash lookup
+   */
   @Nullable
   public TaskFile getTaskFile(@NotNull final VirtualFile file) {
+    if (myCourse == null) {
+      return null;
+    }
+    return getTaskFileIndex().get(file.getPath());
+  }
+
+  /**
+   * Gets index of task files by their paths, index is built on first call after course is loaded
+   */
+  @NotNull
+  private Map<String, TaskFile> getTaskFileIndex() {
+    Map<String, TaskFile> index = myTaskFileIndex;
+    if (index == null) {
+      index = new ConcurrentHashMap<String, TaskFile>();
+      Course course = myCourse;
+      String basePath = myProject.getBasePath();
+      if (course != null && basePath != null) {
+        for (Lesson lesson : course.getLessons()) {
+          for (Task task : lesson.getTaskList()) {
+            String taskDirPath = FileUtil.toSystemIndependentName(FileUtil.join(basePath, Lesson.LESSON_DIR + (lesson.getIndex() + 1),
+                                                                                Task.TASK_DIR + (task.getIndex() + 1)));
+            for (Map.Entry<String, TaskFile> entry : task.getTaskFiles().entrySet()) {
+              index.put(taskDirPath + "/" + entry.getKey(), entry.getValue());
+            }
+          }
+        }
+      }
+      myTaskFileIndex = index;
+    }
+    return index;
+  }
+
+  /**
+   * Index is rebuilt on next lookup, e.g. after directory of lesson or task was renamed
+   */
+  private void invalidateTaskFileIndex() {
+    myTaskFileIndex = null;
+  }
+
+  /**
+   * Finds task file by names of task and lesson directories of file
+   */
+  @Nullable
+  private TaskFile findTaskFile(@NotNull final VirtualFile file) {
     if (myCourse == null) {
       return null;
     }
@@ -228,7 +468,7 @@ public class StudyTaskManager implements ProjectComponent, PersistentStateCompon
       String taskDirName = taskDir.getName();
       if (taskDirName.contains(Task.TASK_DIR)) {
         VirtualFile lessonDir = taskDir.getParent();
-        if (lessonDir != null) {
+        if (lessonDir != null && lessonDir.getName().contains(Lesson.LESSON_DIR)) {
           String lessonDirName = lessonDir.getName();
           int lessonIndex = StudyUtils.getIndex(lessonDirName, Lesson.LESSON_DIR);
           List<Lesson> lessons = myCourse.getLessons();
@@ -249,6 +489,69 @@ public class StudyTaskManager implements ProjectComponent, PersistentStateCompon
     return null;
   }
 
+  /**
+   * Keeps index of task files up to date when files are created, renamed, moved or deleted
+   */
+  private class TaskFileIndexUpdater extends VirtualFileAdapter {
+    @Override
+    public void fileCreated(@NotNull VirtualFileEvent event) {
+      update(event.getFile());
+    }
+
+    @Override
+    public void fileDeleted(@NotNull VirtualFileEvent event) {
+      VirtualFile file = event.getFile();
+      if (file.isDirectory()) {
+        invalidateTaskFileIndex();
+      }
+      else if (myTaskFileIndex != null) {
+        myTaskFileIndex.remove(file.getPath());
+      }
+    }
+
+    @Override
+    public void propertyChanged(@NotNull VirtualFilePropertyEvent event) {
+      if (!VirtualFile.PROP_NAME.equals(event.getPropertyName())) {
+        return;
+      }
+      VirtualFile file = event.getFile();
+      VirtualFile parent = file.getParent();
+      if (file.isDirectory() || parent == null) {
+        invalidateTaskFileIndex();
+        return;
+      }
+      if (myTaskFileIndex != null) {
+        myTaskFileIndex.remove(parent.getPath() + "/" + event.getOldValue());
+      }
+      update(file);
+    }
+
+    @Override
+    public void fileMoved(@NotNull VirtualFileMoveEvent event) {
+      VirtualFile file = event.getFile();
+      if (file.isDirectory()) {
+        invalidateTaskFileIndex();
+        return;
+      }
+      if (myTaskFileIndex != null) {
+        myTaskFileIndex.remove(event.getOldParent().getPath() + "/" + file.getName());
+      }
+      update(file);
+    }
+
+    private void update(@NotNull final VirtualFile file) {
+      if (file.isDirectory()) {
+        invalidateTaskFileIndex();
+        return;
+      }
+      Map<String, TaskFile> index = myTaskFileIndex;
+      TaskFile taskFile = findTaskFile(file);
+      if (index != null && taskFile != null) {
+        index.put(file.getPath(), taskFile);
+      }
+    }
+  }
+
   class FileCreatedListener extends VirtualFileAdapter {
     @Override
     public void fileCreated(@NotNull VirtualFileEvent event) {
@@ -272,6 +575,9 @@ public class StudyTaskManager implements ProjectComponent, PersistentStateCompon
                 taskFile.init(task, false);
                 taskFile.setUserCreated(true);
                 task.getTaskFiles().put(createdFile.getName(), taskFile);
+                if (myTaskFileIndex != null) {
+                  myTaskFileIndex.put(createdFile.getPath(), taskFile);
+                }
               }
             }
           }
@@ -0,0 +1,114 @@
+package ru.compscicenter.edide;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Result of one test reported by test helper.
+ * <p/>
+ * Test helper prints one line per test: {@link #RESULT_PREFIX} followed by json object
+ * {"version": 1, "name": ..., "status": "passed" | "failed", "message": ..., "duration": seconds}.
+ * Results of other versions are reported as failed tests, because their status can't be trusted.
+ * Lines "#study_plugin test OK" and "#study_plugin FAILED + message" printed by test helpers
+ * of courses created before are parsed too.
+ */
+public class StudyTestResult {
+  public static final String RESULT_PREFIX = "#study_plugin_result ";
+  public static final int PROTOCOL_VERSION = 1;
+  public static final String LEGACY_OK = "#study_plugin test OK";
+  public static final String LEGACY_FAILED = "#study_plugin FAILED + ";
+  private static final String PASSED = "passed";
+  private final String myName;
+  private final boolean myPassed;
+  private final String myMessage;
+  private final long myDuration;
+
+  public StudyTestResult(@Nullable final String name, boolean passed, @Nullable final String message, long duration) {
+    myName = name;
+    myPassed = passed;
+    myMessage = message;
+    myDuration = duration;
+  }
+
+  /**
+   * @return name of test or null if it's unknown
+   */
+  @Nullable
+  public String getName() {
+    return myName;
+  }
+
+  public boolean isPassed() {
+    return myPassed;
+  }
+
+  @Nullable
+  public String getMessage() {
+    return myMessage;
+  }
+
+  /**
+   * @return duration in milliseconds or -1 if it's unknown
+   */
+  public long getDuration() {
+    return myDuration;
+  }
+
+  /**
+   * @return result reported in line of test output or null if line isn't a result
+   */
+  @Nullable
+  public static StudyTestResult parse(@NotNull final String line) {
+    int resultStart = line.indexOf(RESULT_PREFIX);
+    if (resultStart >= 0) {
+      return parseJson(line.substring(resultStart + RESULT_PREFIX.length()));
+    }
+    int failedStart = line.indexOf(LEGACY_FAILED);
+    if (failedStart >= 0) {
+      return new StudyTestResult(null, false, line.substring(failedStart + LEGACY_FAILED.length()), -1);
+    }
+    if (line.contains(LEGACY_OK)) {
+      return new StudyTestResult(null, true, null, -1);
+    }
+    return null;
+  }
+
+  @Nullable
+  private static StudyTestResult parseJson(@NotNull final String json) {
+    try {
+      JsonElement element = new JsonParser().parse(json);
+      if (!element.isJsonObject()) {
+        return null;
+      }
+      JsonObject result = element.getAsJsonObject();
+      JsonElement version = result.get("version");
+      if (version == null || !version.isJsonPrimitive() || !version.getAsJsonPrimitive().isNumber() ||
+          version.getAsDouble() != PROTOCOL_VERSION) {
+        return new StudyTestResult(getString(result, "name"), false, "Unsupported version of test result: " + version, -1);
+      }
+      String status = getString(result, "status");
+      if (status == null) {
+        return null;
+      }
+      JsonElement duration = result.get("duration");
+      long durationMillis = duration != null && duration.isJsonPrimitive() ? Math.round(duration.getAsDouble() * 1000) : -1;
+      return new StudyTestResult(getString(result, "name"), PASSED.equals(status), getString(result, "message"), durationMillis);
+    }
+    catch (JsonParseException e) {
+      return null;
+    }
+    catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  @Nullable
+  private static String getString(@NotNull final JsonObject object, @NotNull final String property) {
+    JsonElement element = object.get(property);
+    return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+  }
+}
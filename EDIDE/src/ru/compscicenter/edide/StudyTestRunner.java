@@ -0,0 +1,311 @@
+package ru.compscicenter.edide;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.projectRoots.Sdk;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.jetbrains.python.sdk.PythonSdkType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.compscicenter.edide.course.Course;
+import ru.compscicenter.edide.course.ResourceLimits;
+import ru.compscicenter.edide.course.Task;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Runs tests.py of task against specified file and finds out if tests passed
+ */
+public class StudyTestRunner {
+  private static final Logger LOG = Logger.getInstance(StudyTestRunner.class.getName());
+  public static final String TEST_OK = StudyTestResult.LEGACY_OK;
+  public static final String PYTHONPATH = "PYTHONPATH";
+  private static final String TEST_HELPER = "test_helper.py";
+  private static final String TESTS_EXITED = "Tests exited with code ";
+  private static final String NO_RESULTS = "Tests didn't report any results";
+  private final Task myTask;
+  private final VirtualFile myTaskDir;
+
+  /**
+   * Gets results of tests as soon as they are parsed from output
+   */
+  public interface TestResultListener {
+    void testFinished(@NotNull final StudyTestResult result);
+  }
+
+  public StudyTestRunner(Task task, VirtualFile taskDir) {
+    myTask = task;
+    myTaskDir = taskDir;
+  }
+
+  public Process launchTests(Project project, String executablePath) throws ExecutionException {
+    GeneralCommandLine commandLine = createCommandLine(project, executablePath);
+    return commandLine != null ? commandLine.createProcess() : null;
+  }
+
+  /**
+   * Prepares command line for running tests without starting the process,
+   * so it can be started later outside of EDT
+   */
+  @Nullable
+  public GeneralCommandLine createCommandLine(Project project, String executablePath) {
+    Sdk sdk = PythonSdkType.findPythonSdk(ModuleManager.getInstance(project).getModules()[0]);
+    File testRunner = new File(myTaskDir.getPath(), myTask.getTestFile());
+    GeneralCommandLine commandLine = new GeneralCommandLine();
+    commandLine.setWorkDirectory(myTaskDir.getPath());
+    final Map<String, String> env = commandLine.getEnvironment();
+    final VirtualFile courseDir = project.getBaseDir();
+    if (courseDir != null)
+      env.put(PYTHONPATH, courseDir.getPath());
+    if (sdk != null) {
+      String pythonPath = sdk.getHomePath();
+      if (pythonPath != null) {
+        commandLine.setExePath(pythonPath);
+        commandLine.addParameter(testRunner.getPath());
+        final Course course = StudyTaskManager.getInstance(project).getCourse();
+        assert course != null;
+        commandLine.addParameter(new File(course.getResourcePath()).getParent());
+        commandLine.addParameter(executablePath);
+        return commandLine;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Test helpers copied to projects by previous versions of plugin read texts of task windows
+   * only from file next to checked file
+   *
+   * @param commandLine command line which finds test helper in its python path
+   */
+  public static boolean isLegacyTestHelper(@NotNull final GeneralCommandLine commandLine) {
+    try {
+      String testHelper = loadTestHelper(commandLine);
+      return testHelper != null && !testHelper.contains(StudyFileSnapshot.WINDOWS_ENV);
+    }
+    catch (IOException e) {
+      LOG.info(e);
+      return false;
+    }
+  }
+
+  /**
+   * @param commandLine command line which finds test helper in its python path
+   * @return text of test helper or null if there is no test helper in python path
+   */
+  @Nullable
+  public static String loadTestHelper(@NotNull final GeneralCommandLine commandLine) throws IOException {
+    String pythonPath = commandLine.getEnvironment().get(PYTHONPATH);
+    if (pythonPath == null) {
+      return null;
+    }
+    File testHelper = new File(pythonPath, TEST_HELPER);
+    return testHelper.exists() ? FileUtil.loadFile(testHelper) : null;
+  }
+
+  /**
+   * @return key of time and resource limits tests of task are run with in project
+   */
+  @NotNull
+  public String getLimitsKey(@NotNull final Project project) {
+    Course course = StudyTaskManager.getInstance(project).getCourse();
+    return StudyCheckCache.getLimitsKey(StudyProcessManager.getTimeLimit(course), StudyProcessManager.getLimits(course, myTask));
+  }
+
+  /**
+   * Creates command line which runs the same tests against another file
+   *
+   * @param commandLine command line created by {@link ru.compscicenter.edide.StudyTestRunner#createCommandLine(Project, String)}
+   */
+  @NotNull
+  public static GeneralCommandLine withExecutablePath(@NotNull final GeneralCommandLine commandLine, @NotNull final String executablePath) {
+    GeneralCommandLine copy = new GeneralCommandLine();
+    copy.setExePath(commandLine.getExePath());
+    copy.setWorkDirectory(commandLine.getWorkDirectory());
+    copy.getEnvironment().putAll(commandLine.getEnvironment());
+    List<String> parameters = commandLine.getParametersList().getList();
+    copy.addParameters(parameters.subList(0, parameters.size() - 1));
+    copy.addParameter(executablePath);
+    return copy;
+  }
+
+  /**
+   * Outcome of tests run
+   */
+  public static class Outcome {
+    private final String myFailedMessage;
+    private final String myErrorOutput;
+
+    public Outcome(@NotNull final String failedMessage, @NotNull final String errorOutput) {
+      myFailedMessage = failedMessage;
+      myErrorOutput = errorOutput;
+    }
+
+    /**
+     * @return {@link ru.compscicenter.edide.StudyTestRunner#TEST_OK}, message of the first failed test,
+     * {@link ru.compscicenter.edide.StudyProcessManager#TIME_LIMIT_EXCEEDED}, message about exceeded resource limit
+     * or message about tests which crashed without results
+     */
+    @NotNull
+    public String getFailedMessage() {
+      return myFailedMessage;
+    }
+
+    /**
+     * @return captured stderr of tests, it's truncated if it's too long
+     */
+    @NotNull
+    public String getErrorOutput() {
+      return myErrorOutput;
+    }
+  }
+
+  /**
+   * Collects results of tests from lines of output.
+   * Tests are passed only if they exited normally and reported results, tests run with legacy test helper
+   * are passed if they didn't report failure as before.
+   */
+  private static class ResultCollector implements StudyProcessManager.LineListener {
+    private final TestResultListener myListener;
+    private final boolean myLegacyTestHelper;
+    private String myFailedMessage = null;
+    private boolean myHasResults = false;
+
+    ResultCollector(@Nullable final TestResultListener listener, boolean legacyTestHelper) {
+      myListener = listener;
+      myLegacyTestHelper = legacyTestHelper;
+    }
+
+    @Override
+    public void lineRead(@NotNull final String line) {
+      StudyTestResult result = StudyTestResult.parse(line);
+      if (result == null) {
+        return;
+      }
+      myHasResults = true;
+      if (myListener != null) {
+        myListener.testFinished(result);
+      }
+      if (myFailedMessage == null && !result.isPassed()) {
+        String message = result.getMessage();
+        myFailedMessage = message != null ? message : "";
+      }
+    }
+
+    @NotNull
+    public String getFailedMessage(int exitCode) {
+      if (myFailedMessage != null) {
+        return myFailedMessage;
+      }
+      if (myLegacyTestHelper) {
+        return TEST_OK;
+      }
+      if (exitCode != 0) {
+        return TESTS_EXITED + exitCode;
+      }
+      return myHasResults ? TEST_OK : NO_RESULTS;
+    }
+  }
+
+  /**
+   * Runs tests on warm test worker of project. If worker can't be used or dies during the run
+   * tests are run in new process started from command line. Tests are killed if they exceed
+   * time limit of course, resource limits of task are applied to them.
+   *
+   * @return {@link ru.compscicenter.edide.StudyTestRunner#TEST_OK}, message of the first failed test,
+   * {@link ru.compscicenter.edide.StudyProcessManager#TIME_LIMIT_EXCEEDED}, message about exceeded resource limit
+   * or message about tests which crashed without results
+   * @throws ProcessCanceledException if thread was interrupted while waiting for tests
+   */
+  public String runTests(@NotNull final Project project, @NotNull final GeneralCommandLine commandLine) throws ExecutionException {
+    return runTests(project, commandLine, null).getFailedMessage();
+  }
+
+  /**
+   * The same as {@link ru.compscicenter.edide.StudyTestRunner#runTests(Project, GeneralCommandLine)}, results of tests
+   * are passed to listener while tests are running
+   */
+  @NotNull
+  public Outcome runTests(@NotNull final Project project, @NotNull final GeneralCommandLine commandLine,
+                          @Nullable final TestResultListener listener) throws ExecutionException {
+    StudyTaskManager taskManager = StudyTaskManager.getInstance(project);
+    long timeLimit = StudyProcessManager.getTimeLimit(taskManager.getCourse());
+    ResourceLimits limits = StudyProcessManager.getLimits(taskManager.getCourse(), myTask);
+    StudyTestWorker worker = taskManager.getTestWorker(commandLine.getExePath(), commandLine.getEnvironment().get(PYTHONPATH));
+    return runTests(commandLine, listener, timeLimit, limits, worker);
+  }
+
+  /**
+   * Runs tests without project, it's used by batch grader
+   *
+   * @param timeLimit time limit in milliseconds
+   * @param worker    worker tests are run on, tests are run in new process if it's null or can't run them
+   */
+  @NotNull
+  public static Outcome runTests(@NotNull final GeneralCommandLine commandLine, @Nullable final TestResultListener listener,
+                                 long timeLimit, @NotNull final ResourceLimits limits, @Nullable final StudyTestWorker worker)
+    throws ExecutionException {
+    boolean legacyTestHelper = isLegacyTestHelper(commandLine);
+    if (worker != null) {
+      ResultCollector workerCollector = new ResultCollector(listener, legacyTestHelper);
+      StudyTestWorker.Output output = worker.runTests(commandLine, timeLimit, limits, workerCollector);
+      if (output != null) {
+        String failedMessage;
+        if (output.isTimedOut()) {
+          failedMessage = StudyProcessManager.TIME_LIMIT_EXCEEDED;
+        }
+        else if (output.getExceededLimit() != null) {
+          failedMessage = output.getExceededLimit();
+        }
+        else {
+          failedMessage = workerCollector.getFailedMessage(output.getExitCode());
+        }
+        return new Outcome(failedMessage, output.getErrorOutput());
+      }
+      if (Thread.currentThread().isInterrupted()) {
+        throw new ProcessCanceledException();
+      }
+      LOG.info("test worker is not available, starting new process");
+    }
+    // listener may have got results of tests from worker which died, they are reported again
+    ResultCollector collector = new ResultCollector(listener, legacyTestHelper);
+    Process process = StudyProcessManager.withLimits(commandLine, limits).createProcess();
+    StudyProcessManager.Watch watch = StudyProcessManager.watch(process, timeLimit, Thread.currentThread());
+    StudyOutputBuffer errorOutput = new StudyOutputBuffer();
+    // exit code is unknown if output wasn't read completely
+    int exitCode = -1;
+    try {
+      Future<?> outputPump = StudyProcessManager.pump(process.getInputStream(), null, collector);
+      Future<?> errorPump = StudyProcessManager.pump(process.getErrorStream(), errorOutput, null);
+      outputPump.get();
+      errorPump.get();
+      exitCode = process.waitFor();
+    }
+    catch (InterruptedException e) {
+      throw new ProcessCanceledException();
+    }
+    catch (java.util.concurrent.ExecutionException e) {
+      LOG.info(e.getCause());
+    }
+    finally {
+      watch.finish();
+    }
+    if (watch.isTimedOut()) {
+      return new Outcome(StudyProcessManager.TIME_LIMIT_EXCEEDED, errorOutput.getText());
+    }
+    if (Thread.currentThread().isInterrupted()) {
+      throw new ProcessCanceledException();
+    }
+    String exceededLimit = StudyProcessManager.getExceededLimit(errorOutput.getText());
+    return new Outcome(exceededLimit != null ? exceededLimit : collector.getFailedMessage(exitCode), errorOutput.getText());
+  }
+}
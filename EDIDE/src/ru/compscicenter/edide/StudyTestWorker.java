@@ -0,0 +1,394 @@
+package ru.compscicenter.edide;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.compscicenter.edide.course.ResourceLimits;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long-living python process which runs tests of tasks.
+ * Interpreter is started and test helper is imported only once per project,
+ * every test run is executed in forked child of worker process.
+ * Python side of protocol is implemented in {@link ru.compscicenter.edide.StudyResourceManger#STUDY_WORKER}
+ */
+public class StudyTestWorker {
+  private static final Logger LOG = Logger.getInstance(StudyTestWorker.class.getName());
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final String READY = "#study_worker ready";
+  private static final String RESPONSE = "#study_worker response ";
+  private static final String OUTPUT = "#study_worker output ";
+  private static final String TIMEOUT = " timeout";
+  private static final String LIMIT = " limit ";
+  private static final int START_TIMEOUT = 10;
+  /**
+   * Time given to worker to kill tests which exceeded time limit and to report it
+   */
+  private static final long KILL_TIMEOUT = 5000;
+  private final String myPythonPath;
+  private final String myPythonPathEnv;
+  private final Process myProcess;
+  private final Writer myRequestWriter;
+  private final DataInputStream myResponseStream;
+  private final Map<Integer, Response> myResponses = new HashMap<Integer, Response>();
+  private final AtomicInteger myRequestIndex = new AtomicInteger();
+  private final CountDownLatch myStarted = new CountDownLatch(1);
+  private volatile boolean myAlive = false;
+
+  private static class Response {
+    private final CountDownLatch myFinished = new CountDownLatch(1);
+    private final List<String> myLines = new ArrayList<String>();
+    private final StudyOutputBuffer myErrorOutput = new StudyOutputBuffer();
+    private final StudyProcessManager.LineListener myListener;
+    private boolean myCompleted = false;
+    private boolean myTimedOut = false;
+    private String myExceededLimit = null;
+    private int myExitCode = 0;
+
+    Response(@Nullable final StudyProcessManager.LineListener listener) {
+      myListener = listener;
+    }
+
+    private void addOutput(@NotNull final byte[] output) throws IOException {
+      BufferedReader reader = new BufferedReader(new StringReader(new String(output, UTF_8)));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        myLines.add(line);
+        if (myListener != null) {
+          myListener.lineRead(line);
+        }
+      }
+    }
+  }
+
+  /**
+   * Output of tests run by worker
+   */
+  public static class Output {
+    private final List<String> myLines;
+    private final String myErrorOutput;
+    private final boolean myTimedOut;
+    private final String myExceededLimit;
+    private final int myExitCode;
+
+    Output(@NotNull final List<String> lines, @NotNull final String errorOutput, boolean timedOut,
+           @Nullable final String exceededLimit, int exitCode) {
+      myLines = lines;
+      myErrorOutput = errorOutput;
+      myTimedOut = timedOut;
+      myExceededLimit = exceededLimit;
+      myExitCode = exitCode;
+    }
+
+    /**
+     * @return lines of stdout of tests
+     */
+    public List<String> getLines() {
+      return myLines;
+    }
+
+    @NotNull
+    public String getErrorOutput() {
+      return myErrorOutput;
+    }
+
+    /**
+     * @return true if tests were killed because they exceeded time limit
+     */
+    public boolean isTimedOut() {
+      return myTimedOut;
+    }
+
+    /**
+     * @return message about resource limit tests exceeded or null
+     */
+    @Nullable
+    public String getExceededLimit() {
+      return myExceededLimit;
+    }
+
+    /**
+     * @return exit code of tests, it's negative number of signal if tests were killed
+     */
+    public int getExitCode() {
+      return myExitCode;
+    }
+  }
+
+  private StudyTestWorker(@NotNull final String pythonPath, @Nullable final String pythonPathEnv, @NotNull final Process process) {
+    myPythonPath = pythonPath;
+    myPythonPathEnv = pythonPathEnv;
+    myProcess = process;
+    myRequestWriter = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), UTF_8));
+    myResponseStream = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+  }
+
+  /**
+   * Starts worker and waits until it's ready to accept requests
+   *
+   * @return started worker or null if worker can't be used with this interpreter
+   */
+  @Nullable
+  public static StudyTestWorker start(@NotNull final String pythonPath, @Nullable final String pythonPathEnv) {
+    // worker imports sandbox from its directory
+    File script = StudyProcessManager.getScriptFile(StudyResourceManger.STUDY_WORKER);
+    if (script == null || StudyProcessManager.getScriptFile(StudyResourceManger.STUDY_SANDBOX) == null) {
+      return null;
+    }
+    GeneralCommandLine commandLine = new GeneralCommandLine();
+    commandLine.setExePath(pythonPath);
+    commandLine.addParameter(script.getPath());
+    if (pythonPathEnv != null) {
+      commandLine.getEnvironment().put(StudyTestRunner.PYTHONPATH, pythonPathEnv);
+    }
+    final StudyTestWorker worker;
+    try {
+      worker = new StudyTestWorker(pythonPath, pythonPathEnv, commandLine.createProcess());
+    }
+    catch (ExecutionException e) {
+      LOG.info(e);
+      return null;
+    }
+    try {
+      // stderr of worker itself is kept off the pipe responses are read from
+      StudyProcessManager.pump(worker.myProcess.getErrorStream(), null, new StudyProcessManager.LineListener() {
+        @Override
+        public void lineRead(@NotNull final String line) {
+          LOG.info("test worker: " + line);
+        }
+      });
+      Thread readerThread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          worker.readResponses();
+        }
+      }, "Study test worker reader");
+      readerThread.setDaemon(true);
+      readerThread.start();
+      if (worker.myStarted.await(START_TIMEOUT, TimeUnit.SECONDS) && worker.myAlive) {
+        return worker;
+      }
+      LOG.info("test worker failed to start with " + pythonPath);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    worker.stop();
+    return null;
+  }
+
+  public boolean isAlive() {
+    return myAlive;
+  }
+
+  /**
+   * @return if worker runs tests with the same interpreter and python path as specified
+   */
+  public boolean isCompatible(@NotNull final String pythonPath, @Nullable final String pythonPathEnv) {
+    return myPythonPath.equals(pythonPath) &&
+           (myPythonPathEnv == null ? pythonPathEnv == null : myPythonPathEnv.equals(pythonPathEnv));
+  }
+
+  /**
+   * Runs tests described by command line in forked child of worker.
+   * Several requests may be processed concurrently. Child is killed with processes
+   * it started if it exceeds time limit or if waiting thread is interrupted.
+   *
+   * @param commandLine command line created by {@link ru.compscicenter.edide.StudyTestRunner#createCommandLine}
+   * @param timeLimit   time limit in milliseconds
+   * @param limits      limits of resources applied to child
+   * @param listener    gets lines of stdout of tests while they are running, it's called on reader thread of worker
+   * @return output of tests or null if worker can't run them
+   */
+  @Nullable
+  public Output runTests(@NotNull final GeneralCommandLine commandLine, long timeLimit, @NotNull final ResourceLimits limits,
+                         @Nullable final StudyProcessManager.LineListener listener) {
+    List<String> parameters = commandLine.getParametersList().getList();
+    File workDirectory = commandLine.getWorkDirectory();
+    if (!myAlive || parameters.isEmpty() || workDirectory == null ||
+        !isCompatible(commandLine.getExePath(), commandLine.getEnvironment().get(StudyTestRunner.PYTHONPATH))) {
+      return null;
+    }
+    int requestId = myRequestIndex.incrementAndGet();
+    JsonObject request = new JsonObject();
+    request.addProperty("id", requestId);
+    request.addProperty("test", parameters.get(0));
+    request.addProperty("cwd", workDirectory.getPath());
+    JsonArray args = new JsonArray();
+    for (String parameter : parameters.subList(1, parameters.size())) {
+      args.add(new JsonPrimitive(parameter));
+    }
+    request.add("args", args);
+    JsonObject env = new JsonObject();
+    for (Map.Entry<String, String> variable : commandLine.getEnvironment().entrySet()) {
+      env.addProperty(variable.getKey(), variable.getValue());
+    }
+    request.add("env", env);
+    request.addProperty("timeout", timeLimit / 1000.0);
+    request.add("limits", StudyProcessManager.toJson(limits));
+
+    Response response = new Response(listener);
+    synchronized (myResponses) {
+      if (!myAlive) {
+        return null;
+      }
+      myResponses.put(requestId, response);
+    }
+    try {
+      sendRequest(request);
+      if (!response.myFinished.await(timeLimit + KILL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+        cancel(requestId);
+        return new Output(Collections.<String>emptyList(), "", true, null, -1);
+      }
+    }
+    catch (IOException e) {
+      LOG.info(e);
+      return null;
+    }
+    catch (InterruptedException e) {
+      cancel(requestId);
+      Thread.currentThread().interrupt();
+      return null;
+    }
+    finally {
+      synchronized (myResponses) {
+        myResponses.remove(requestId);
+      }
+    }
+    return response.myCompleted
+           ? new Output(response.myLines, response.myErrorOutput.getText(), response.myTimedOut, response.myExceededLimit,
+                        response.myExitCode)
+           : null;
+  }
+
+  private void sendRequest(@NotNull final JsonObject request) throws IOException {
+    synchronized (myRequestWriter) {
+      myRequestWriter.write(request.toString());
+      myRequestWriter.write("\n");
+      myRequestWriter.flush();
+    }
+  }
+
+  /**
+   * Asks worker to kill child running request
+   */
+  private void cancel(int requestId) {
+    JsonObject request = new JsonObject();
+    request.addProperty("cancel", requestId);
+    try {
+      sendRequest(request);
+    }
+    catch (IOException e) {
+      LOG.info(e);
+    }
+  }
+
+  /**
+   * While tests are running, complete lines of their stdout are sent as "#study_worker output id size" line
+   * followed by output of specified size in bytes. Response is header line
+   * "#study_worker response id exit_code output_size error_size[ timeout| limit message]" followed by the rest of stdout
+   * and stderr of tests of specified sizes. Other lines are output of worker itself.
+   */
+  private void readResponses() {
+    try {
+      String line;
+      while ((line = readLine()) != null) {
+        if (line.equals(READY)) {
+          myAlive = true;
+          myStarted.countDown();
+        }
+        else if (line.startsWith(OUTPUT)) {
+          String[] header = line.substring(OUTPUT.length()).split(" ");
+          byte[] output = new byte[Integer.parseInt(header[1])];
+          myResponseStream.readFully(output);
+          Response response = getResponse(Integer.parseInt(header[0]));
+          if (response != null) {
+            response.addOutput(output);
+          }
+        }
+        else if (line.startsWith(RESPONSE)) {
+          String[] header = line.substring(RESPONSE.length()).split(" ", 5);
+          int requestId = Integer.parseInt(header[0]);
+          byte[] output = new byte[Integer.parseInt(header[2])];
+          myResponseStream.readFully(output);
+          byte[] errorOutput = new byte[Integer.parseInt(header[3])];
+          myResponseStream.readFully(errorOutput);
+          Response response = getResponse(requestId);
+          if (response != null) {
+            response.addOutput(output);
+            response.myErrorOutput.append(new String(errorOutput, UTF_8));
+            response.myExitCode = Integer.parseInt(header[1]);
+            String suffix = header.length > 4 ? " " + header[4] : "";
+            response.myTimedOut = suffix.equals(TIMEOUT);
+            if (suffix.startsWith(LIMIT)) {
+              response.myExceededLimit = suffix.substring(LIMIT.length());
+            }
+            response.myCompleted = true;
+            response.myFinished.countDown();
+          }
+        }
+        else {
+          LOG.info("test worker: " + line);
+        }
+      }
+    }
+    catch (IOException e) {
+      LOG.info(e);
+    }
+    catch (RuntimeException e) {
+      // malformed header, stream can't be synchronized with responses anymore
+      LOG.warn(e);
+    }
+    finally {
+      synchronized (myResponses) {
+        myAlive = false;
+        for (Response response : myResponses.values()) {
+          response.myFinished.countDown();
+        }
+      }
+      myStarted.countDown();
+      StudyUtils.closeSilently(myResponseStream);
+    }
+  }
+
+  @Nullable
+  private Response getResponse(int requestId) {
+    synchronized (myResponses) {
+      return myResponses.get(requestId);
+    }
+  }
+
+  /**
+   * @return line of worker output without line separator or null if output ended
+   */
+  @Nullable
+  private String readLine() throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int b;
+    while ((b = myResponseStream.read()) != '\n') {
+      if (b == -1) {
+        return line.size() > 0 ? line.toString("UTF-8") : null;
+      }
+      line.write(b);
+    }
+    String text = line.toString("UTF-8");
+    return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+  }
+
+  public void stop() {
+    myAlive = false;
+    StudyUtils.closeSilently(myRequestWriter);
+    StudyProcessManager.destroyProcessTree(myProcess);
+  }
+}
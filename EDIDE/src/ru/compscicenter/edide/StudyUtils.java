@@ -3,30 +3,36 @@ package ru.compscicenter.edide;
 import com.intellij.ide.SaveAndSyncHandlerImpl;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.Presentation;
-import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.fileEditor.FileEditor;
 import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.util.TextRange;
-import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.openapi.wm.ToolWindowManager;
 import com.intellij.util.ui.UIUtil;
 import org.jetbrains.annotations.NotNull;
-import ru.compscicenter.edide.course.TaskFile;
-import ru.compscicenter.edide.course.TaskWindow;
 import ru.compscicenter.edide.editor.StudyEditor;
 import ru.compscicenter.edide.ui.StudyToolWindowFactory;
 
 import java.io.*;
 import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * author: liana
  * data: 7/15/14.
  */
 public class StudyUtils {
+  /**
+   * System property with number of threads used to run test processes,
+   * number of available processors is used by default
+   */
+  public static final String CHECK_THREADS_PROPERTY = "study.check.threads";
+  private static ExecutorService ourCheckExecutor = null;
+
   public static void closeSilently(Closeable stream) {
     if (stream != null) {
       try {
@@ -116,33 +122,24 @@ public class StudyUtils {
     return Integer.parseInt(fullName.substring(logicalName.length())) - 1;
   }
 
-  public static VirtualFile flushWindows(Document document, TaskFile taskFile, VirtualFile file) {
-    VirtualFile taskDir = file.getParent();
-    VirtualFile file_windows = null;
-    if (taskDir != null) {
-      String name = file.getNameWithoutExtension() + "_windows";
-      PrintWriter printWriter = null;
-      try {
+  /**
+   * @return shared pool for running test processes, its size is taken from
+   * {@link ru.compscicenter.edide.StudyUtils#CHECK_THREADS_PROPERTY}
+   */
+  public static synchronized ExecutorService getCheckExecutor() {
+    if (ourCheckExecutor == null) {
+      int threadNum = Math.max(1, Integer.getInteger(CHECK_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+      ourCheckExecutor = Executors.newFixedThreadPool(threadNum, new ThreadFactory() {
+        private final AtomicInteger myThreadIndex = new AtomicInteger();
 
-        file_windows = taskDir.createChildData(taskFile, name);
-        printWriter = new PrintWriter(new FileOutputStream(file_windows.getPath()));
-        for (TaskWindow taskWindow : taskFile.getTaskWindows()) {
-          if (!taskWindow.isValid(document)) {
-            continue;
-          }
-          int start = taskWindow.getRealStartOffset(document);
-          String windowDescription = document.getText(new TextRange(start, start + taskWindow.getLength()));
-          printWriter.println("#study_plugin_window = " + windowDescription);
+        @Override
+        public Thread newThread(@NotNull Runnable r) {
+          Thread thread = new Thread(r, "Study check " + myThreadIndex.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
         }
-      }
-      catch (IOException e) {
-        e.printStackTrace();
-      }
-      finally {
-        closeSilently(printWriter);
-        StudyUtils.synchronize();
-      }
+      });
     }
-    return file_windows;
+    return ourCheckExecutor;
   }
 }
@@ -0,0 +1,148 @@
+package ru.compscicenter.edide;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Finds out which task windows of failed file are solved by running tests against variants
+ * where some windows contain text typed by user and the others contain possible answers.
+ * <p/>
+ * In {@link Mode#EXHAUSTIVE} mode every window is checked separately. In {@link Mode#BISECT} mode
+ * windows are checked in groups: if group passes all its windows are solved, otherwise group
+ * is split in halves which are checked next, so k wrong windows of N are found in about
+ * 2k*log(N/k) runs. It assumes that a group fails iff it contains a wrong window, i.e. that
+ * wrong windows don't compensate each other. Groups of the same level are checked concurrently.
+ */
+public class StudyWindowLocalizer {
+  private static final Logger LOG = Logger.getInstance(StudyWindowLocalizer.class.getName());
+  /**
+   * System property with localization mode: "exhaustive" (default) or "bisect"
+   */
+  public static final String MODE_PROPERTY = "study.check.localization";
+  private final Mode myMode;
+  private final ExecutorService myExecutor;
+
+  public enum Mode {
+    EXHAUSTIVE, BISECT
+  }
+
+  /**
+   * Runs tests against variant of file
+   */
+  public interface Checker<T> {
+    /**
+     * @param userWindows windows which contain text typed by user, the others contain possible answers
+     * @return true if tests passed
+     */
+    boolean passes(@NotNull final List<T> userWindows) throws Exception;
+  }
+
+  public StudyWindowLocalizer(@NotNull final Mode mode, @NotNull final ExecutorService executor) {
+    myMode = mode;
+    myExecutor = executor;
+  }
+
+  @NotNull
+  public static Mode getMode() {
+    String mode = System.getProperty(MODE_PROPERTY);
+    if (mode != null) {
+      try {
+        return Mode.valueOf(mode.toUpperCase(Locale.ENGLISH));
+      }
+      catch (IllegalArgumentException e) {
+        LOG.warn("unknown localization mode " + mode);
+      }
+    }
+    return Mode.EXHAUSTIVE;
+  }
+
+  /**
+   * @param windows   windows to check
+   * @param allFailed true if it's already known that tests fail when all the windows contain text typed by user
+   * @return map from window to true if it's solved, windows which checks failed with error are missing in it
+   * @throws CancellationException if waiting for checks was cancelled, started checks are interrupted
+   */
+  @NotNull
+  public <T> Map<T, Boolean> localize(@NotNull final List<T> windows, boolean allFailed, @NotNull final Checker<T> checker) {
+    Map<T, Boolean> results = new HashMap<T, Boolean>();
+    List<List<T>> groups = new ArrayList<List<T>>();
+    if (myMode == Mode.EXHAUSTIVE) {
+      for (T window : windows) {
+        groups.add(Collections.singletonList(window));
+      }
+    }
+    else if (!allFailed) {
+      groups.add(windows);
+    }
+    else if (windows.size() == 1) {
+      results.put(windows.get(0), false);
+    }
+    else {
+      groups.addAll(split(windows));
+    }
+    while (!groups.isEmpty()) {
+      List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(groups.size());
+      for (final List<T> group : groups) {
+        futures.add(myExecutor.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            return checker.passes(group);
+          }
+        }));
+      }
+      List<List<T>> nextGroups = new ArrayList<List<T>>();
+      try {
+        for (int i = 0; i < groups.size(); i++) {
+          List<T> group = groups.get(i);
+          boolean passed;
+          try {
+            passed = waitFor(futures.get(i));
+          }
+          catch (ExecutionException e) {
+            LOG.warn(e.getCause());
+            continue;
+          }
+          if (passed || group.size() == 1) {
+            for (T window : group) {
+              results.put(window, passed);
+            }
+          }
+          else {
+            nextGroups.addAll(split(group));
+          }
+        }
+      }
+      finally {
+        for (Future<Boolean> future : futures) {
+          future.cancel(true);
+        }
+      }
+      groups = nextGroups;
+    }
+    return results;
+  }
+
+  /**
+   * Waits for result of check, can be overridden to check if waiting should be cancelled
+   */
+  protected <R> R waitFor(@NotNull final Future<R> future) throws ExecutionException {
+    try {
+      return future.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException();
+    }
+  }
+
+  private static <T> List<List<T>> split(@NotNull final List<T> group) {
+    int middle = group.size() / 2;
+    List<List<T>> halves = new ArrayList<List<T>>(2);
+    halves.add(new ArrayList<T>(group.subList(0, middle)));
+    halves.add(new ArrayList<T>(group.subList(middle, group.size())));
+    return halves;
+  }
+}
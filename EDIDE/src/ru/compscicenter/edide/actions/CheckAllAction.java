@@ -0,0 +1,288 @@
+package ru.compscicenter.edide.actions;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.ide.projectView.ProjectView;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.DumbAwareAction;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.compscicenter.edide.*;
+import ru.compscicenter.edide.course.*;
+import ru.compscicenter.edide.editor.StudyEditor;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Checks all the task files of course, e.g. after interpreter of project was changed.
+ * Task files are checked in parallel in background, statuses of tasks are updated at once
+ * when all the checks are finished, then failed and the slowest tasks are reported.
+ */
+public class CheckAllAction extends DumbAwareAction {
+  private static final Logger LOG = Logger.getInstance(CheckAllAction.class.getName());
+  private static final int SLOWEST_TASKS = 5;
+  private static final long CANCEL_CHECK_INTERVAL = 100;
+
+  /**
+   * Task file to be checked and result of its check
+   */
+  private static class FileCheck {
+    private final TaskFile myTaskFile;
+    private final String myFileName;
+    private final StudyFileSnapshot mySnapshot;
+    private final StudyTestRunner myTestRunner;
+    private final GeneralCommandLine myTestCommandLine;
+    private StudyCheckCache.Result myResult = null;
+    private long myDuration = 0;
+
+    FileCheck(@NotNull final TaskFile taskFile,
+              @NotNull final String fileName,
+              @NotNull final StudyFileSnapshot snapshot,
+              @NotNull final StudyTestRunner testRunner,
+              @NotNull final GeneralCommandLine testCommandLine) {
+      myTaskFile = taskFile;
+      myFileName = fileName;
+      mySnapshot = snapshot;
+      myTestRunner = testRunner;
+      myTestCommandLine = testCommandLine;
+    }
+
+    String getPath() {
+      return FileUtil.join(myTaskFile.getTask().getTaskDirPath(), myFileName);
+    }
+  }
+
+  public void checkAll(@NotNull final Project project) {
+    Course course = StudyTaskManager.getInstance(project).getCourse();
+    if (course == null) {
+      return;
+    }
+    final List<FileCheck> checks = new ArrayList<FileCheck>();
+    final List<String> missingFiles = new ArrayList<String>();
+    for (Lesson lesson : course.getLessons()) {
+      for (Task task : lesson.getTaskList()) {
+        VirtualFile taskDir = task.getTaskDir(project);
+        for (Map.Entry<String, TaskFile> entry : task.getTaskFiles().entrySet()) {
+          String fileName = entry.getKey();
+          FileCheck check = createCheck(project, task, taskDir, fileName, entry.getValue());
+          if (check != null) {
+            checks.add(check);
+          }
+          else {
+            missingFiles.add(FileUtil.join(task.getTaskDirPath(), fileName));
+          }
+        }
+      }
+    }
+    ProgressManager.getInstance().run(new CheckAllTask(project, checks, missingFiles));
+  }
+
+  /**
+   * Makes snapshot of task file as it's seen in editor, unsaved changes are checked too
+   *
+   * @return null if task file can't be checked
+   */
+  @Nullable
+  private static FileCheck createCheck(@NotNull final Project project, @NotNull final Task task, @Nullable final VirtualFile taskDir,
+                                       @NotNull final String fileName, @NotNull final TaskFile taskFile) {
+    VirtualFile file = taskDir != null ? taskDir.findChild(fileName) : null;
+    if (file == null) {
+      return null;
+    }
+    Document document = FileDocumentManager.getInstance().getDocument(file);
+    if (document == null) {
+      return null;
+    }
+    StudyTestRunner testRunner = new StudyTestRunner(task, taskDir);
+    GeneralCommandLine testCommandLine = testRunner.createCommandLine(project, file.getPath());
+    if (testCommandLine == null) {
+      return null;
+    }
+    return new FileCheck(taskFile, fileName, StudyFileSnapshot.create(document, taskFile), testRunner, testCommandLine);
+  }
+
+  private static class CheckAllTask extends com.intellij.openapi.progress.Task.Backgroundable {
+    private final List<FileCheck> myChecks;
+    private final List<String> myMissingFiles;
+
+    CheckAllTask(@NotNull final Project project, @NotNull final List<FileCheck> checks, @NotNull final List<String> missingFiles) {
+      super(project, "Checking all tasks", true);
+      myChecks = checks;
+      myMissingFiles = missingFiles;
+    }
+
+    @Override
+    public void run(@NotNull final ProgressIndicator indicator) {
+      indicator.setIndeterminate(false);
+      indicator.setText("Running tests");
+      final StudyCheckCache cache = StudyTaskManager.getInstance(myProject).getCheckCache();
+      int threads = Math.max(1, Integer.getInteger(StudyUtils.CHECK_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+      // checkers wait for tests run in shared check executor, so they are run in their own pool
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      CompletionService<FileCheck> completionService = new ExecutorCompletionService<FileCheck>(executor);
+      try {
+        for (final FileCheck check : myChecks) {
+          completionService.submit(new Callable<FileCheck>() {
+            @Override
+            public FileCheck call() throws Exception {
+              long start = System.currentTimeMillis();
+              check.myResult = createChecker(check, cache).check(null);
+              check.myDuration = System.currentTimeMillis() - start;
+              return check;
+            }
+          });
+        }
+        int checked = 0;
+        while (checked < myChecks.size()) {
+          Future<FileCheck> future = completionService.poll(CANCEL_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+          if (future == null) {
+            indicator.checkCanceled();
+            continue;
+          }
+          checked++;
+          try {
+            indicator.setText2(future.get().getPath());
+          }
+          catch (java.util.concurrent.ExecutionException e) {
+            LOG.warn(e.getCause());
+          }
+          indicator.setFraction((double)checked / myChecks.size());
+        }
+      }
+      catch (InterruptedException e) {
+        throw new ProcessCanceledException();
+      }
+      finally {
+        executor.shutdownNow();
+      }
+    }
+
+    @NotNull
+    private StudyChecker createChecker(@NotNull final FileCheck check, @NotNull final StudyCheckCache cache) {
+      StudyChecker.TestRunner testRunner = new StudyChecker.TestRunner() {
+        @NotNull
+        @Override
+        public StudyTestRunner.Outcome runTests(@NotNull final GeneralCommandLine commandLine,
+                                                @Nullable final StudyTestRunner.TestResultListener listener)
+          throws ExecutionException {
+          return check.myTestRunner.runTests(myProject, commandLine, listener);
+        }
+
+        @NotNull
+        @Override
+        public String getLimitsKey() {
+          return check.myTestRunner.getLimitsKey(myProject);
+        }
+      };
+      return new StudyChecker(check.mySnapshot, check.myFileName, check.myTaskFile.getTask().getTaskDirPath(),
+                              check.myTestCommandLine, testRunner, cache, StudyUtils.getCheckExecutor());
+    }
+
+    @Override
+    public void onSuccess() {
+      Project project = getProject();
+      if (project == null || project.isDisposed()) {
+        return;
+      }
+      Map<Task, Boolean> taskPassed = new LinkedHashMap<Task, Boolean>();
+      List<String> failures = new ArrayList<String>();
+      for (FileCheck check : myChecks) {
+        Task task = check.myTaskFile.getTask();
+        boolean passed = check.myResult != null && check.myResult.getFailedMessage().equals(StudyTestRunner.TEST_OK);
+        taskPassed.put(task, passed && !Boolean.FALSE.equals(taskPassed.get(task)));
+        if (check.myResult == null) {
+          failures.add(check.getPath() + ": check failed");
+        }
+        else if (!passed) {
+          failures.add(check.getPath() + ": " + check.myResult.getFailedMessage());
+          for (StudyFileSnapshot.Window window : check.mySnapshot.getWindows()) {
+            TaskWindow taskWindow = window.getTaskWindow();
+            StudyStatus status = check.myResult.getWindowStatus(taskWindow.getIndex());
+            if (status != null) {
+              taskWindow.setStatus(status);
+            }
+          }
+        }
+      }
+      for (Map.Entry<Task, Boolean> entry : taskPassed.entrySet()) {
+        Task task = entry.getKey();
+        if (entry.getValue()) {
+          task.setStatus(StudyStatus.Solved);
+        }
+        else {
+          // statuses of windows are kept if task already failed by them, they aren't known if check threw
+          task.setStatus(StudyStatus.Failed);
+        }
+      }
+      for (String missingFile : myMissingFiles) {
+        failures.add(missingFile + ": file not found");
+      }
+      StudyUtils.updateStudyToolWindow(project);
+      ProjectView.getInstance(project).refresh();
+      redrawSelectedEditor(project);
+      String report = getReport(failures);
+      LOG.info(report);
+      Messages.showInfoMessage(project, report, "Check All Tasks");
+    }
+
+    private static void redrawSelectedEditor(@NotNull final Project project) {
+      Editor editor = StudyEditor.getSelectedEditor(project);
+      if (editor == null) {
+        return;
+      }
+      VirtualFile file = FileDocumentManager.getInstance().getFile(editor.getDocument());
+      TaskFile taskFile = file != null ? StudyTaskManager.getInstance(project).getTaskFile(file) : null;
+      if (taskFile != null) {
+        taskFile.drawAllWindows(editor);
+      }
+    }
+
+    @NotNull
+    private String getReport(@NotNull final List<String> failures) {
+      StringBuilder report = new StringBuilder();
+      int checked = myChecks.size() + myMissingFiles.size();
+      report.append(checked - failures.size()).append(" of ").append(checked).append(" task files passed\n");
+      if (!failures.isEmpty()) {
+        report.append("\nFailed:\n");
+        for (String failure : failures) {
+          report.append(failure).append("\n");
+        }
+      }
+      List<FileCheck> slowest = new ArrayList<FileCheck>(myChecks);
+      Collections.sort(slowest, new Comparator<FileCheck>() {
+        @Override
+        public int compare(FileCheck check1, FileCheck check2) {
+          return check1.myDuration < check2.myDuration ? 1 : check1.myDuration == check2.myDuration ? 0 : -1;
+        }
+      });
+      slowest = slowest.subList(0, Math.min(SLOWEST_TASKS, slowest.size()));
+      if (!slowest.isEmpty()) {
+        report.append("\nSlowest:\n");
+        for (FileCheck check : slowest) {
+          report.append(check.getPath()).append(": ").append(check.myDuration).append(" ms\n");
+        }
+      }
+      return report.toString();
+    }
+  }
+
+  @Override
+  public void actionPerformed(AnActionEvent e) {
+    Project project = e.getProject();
+    if (project != null) {
+      checkAll(project);
+    }
+  }
+}
@@ -77,19 +77,10 @@ public class RefreshTaskAction extends DumbAwareAction {
                       patternText.delete(patternLength - 1, patternLength);
                     }
                     document.setText(patternText);
-                    StudyStatus oldStatus = currentTask.getStatus();
-                    LessonInfo lessonInfo = currentTask.getLesson().getLessonInfo();
-                    if (oldStatus == StudyStatus.Failed) {
-                      lessonInfo.setTaskFailed(lessonInfo.getTaskFailed() - 1);
-                    }
-                    if (oldStatus == StudyStatus.Solved) {
-                      lessonInfo.setTaskSolved(lessonInfo.getTaskSolved() - 1);
-                    }
-                    lessonInfo.setTaskUnchecked(lessonInfo.getTaskUnchecked() + 1);
-                    StudyUtils.updateStudyToolWindow(project);
                     for (TaskWindow taskWindow : selectedTaskFile.getTaskWindows()) {
                       taskWindow.reset();
                     }
+                    StudyUtils.updateStudyToolWindow(project);
                     ProjectView.getInstance(project).refresh();
                     if (listener != null) {
                       document.addDocumentListener(listener);
@@ -6,6 +6,7 @@ import com.intellij.execution.configurations.GeneralCommandLine;
 import com.intellij.execution.process.OSProcessHandler;
 import com.intellij.execution.process.ProcessHandler;
 import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.module.ModuleManager;
@@ -14,8 +15,11 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.projectRoots.Sdk;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.jetbrains.python.sdk.PythonSdkType;
+import org.jetbrains.annotations.NotNull;
+import ru.compscicenter.edide.StudyProcessManager;
 import ru.compscicenter.edide.StudyResourceManger;
 import ru.compscicenter.edide.StudyTaskManager;
+import ru.compscicenter.edide.course.Course;
 import ru.compscicenter.edide.course.Task;
 import ru.compscicenter.edide.course.TaskFile;
 import ru.compscicenter.edide.editor.StudyEditor;
@@ -23,12 +27,15 @@ import ru.compscicenter.edide.editor.StudyEditor;
 import java.io.File;
 
 public class StudyRunAction extends DumbAwareAction {
+  private static final Logger LOG = Logger.getInstance(StudyRunAction.class.getName());
   public static final String ACTION_ID = "StudyRunAction";
   public void run(Project project) {
     Editor selectedEditor = StudyEditor.getSelectedEditor(project);
     FileDocumentManager fileDocumentManager = FileDocumentManager.getInstance();
     assert selectedEditor != null;
     VirtualFile openedFile = fileDocumentManager.getFile(selectedEditor.getDocument());
+    // program is run from disk, so only the file being run is saved
+    fileDocumentManager.saveDocument(selectedEditor.getDocument());
     StudyTaskManager taskManager = StudyTaskManager.getInstance(project);
     if (openedFile != null && openedFile.getCanonicalPath() != null) {
       String filePath = openedFile.getCanonicalPath();
@@ -46,36 +53,40 @@ public class StudyRunAction extends DumbAwareAction {
             cmd.addParameter(new File(project.getBaseDir().getPath(), StudyResourceManger.USER_TESTER).getPath());
             cmd.addParameter(pythonPath);
             cmd.addParameter(filePath);
-            Process p = null;
-            try {
-              p = cmd.createProcess();
-            }
-            catch (ExecutionException e) {
-              e.printStackTrace();
-            }
-            ProcessHandler handler = new OSProcessHandler(p);
-
-            RunContentExecutor executor = new RunContentExecutor(project, handler);
-            executor.run();
+            runProcess(project, cmd, currentTask);
             return;
           }
-          try {
-            cmd.addParameter(filePath);
-            Process p = cmd.createProcess();
-            ProcessHandler handler = new OSProcessHandler(p);
-
-            RunContentExecutor executor = new RunContentExecutor(project, handler);
-            executor.run();
-          }
-
-          catch (ExecutionException e) {
-            e.printStackTrace();
-          }
+          cmd.addParameter(filePath);
+          runProcess(project, cmd, currentTask);
         }
       }
     }
   }
 
+  /**
+   * Runs process in console, process is killed with its children when console is stopped.
+   * It isn't limited by time, because program may wait for input of student. Resource limits of task are applied to process
+   */
+  private static void runProcess(@NotNull final Project project, @NotNull final GeneralCommandLine cmd, @NotNull final Task task) {
+    try {
+      Course course = StudyTaskManager.getInstance(project).getCourse();
+      final Process p = StudyProcessManager.withLimits(cmd, StudyProcessManager.getLimits(course, task)).createProcess();
+      ProcessHandler handler = new OSProcessHandler(p) {
+        @Override
+        protected void destroyProcessImpl() {
+          StudyProcessManager.destroyProcessTree(p);
+          super.destroyProcessImpl();
+        }
+      };
+
+      RunContentExecutor executor = new RunContentExecutor(project, handler);
+      executor.run();
+    }
+    catch (ExecutionException e) {
+      LOG.error(e);
+    }
+  }
+
   public void actionPerformed(AnActionEvent e) {
     run(e.getProject());
   }
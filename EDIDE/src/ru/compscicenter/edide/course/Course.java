@@ -21,8 +21,17 @@ public class Course {
   public String name;
   public String myResourcePath = "";
   public String author;
+  /**
+   * Time limit of one run of task in seconds, default limit is used if it's not positive
+   */
+  public int timeLimit;
+  public ResourceLimits limits;
   public static final String COURSE_DIR = "course";
   public static final String HINTS_DIR = "hints";
+  /**
+   * Directory python creates next to imported modules such as test_helper.py, it's never copied to project of student
+   */
+  public static final String PYTHON_CACHE_DIR = "__pycache__";
 
 
   public List<Lesson> getLessons() {
@@ -66,7 +75,8 @@ public class Course {
                 File[] files = resourceRoot.listFiles(new FilenameFilter() {
                   @Override
                   public boolean accept(File dir, String name) {
-                   return !name.contains(Lesson.LESSON_DIR) && !name.equals("course.json") && !name.equals("hints");
+                   return !name.contains(Lesson.LESSON_DIR) && !name.equals("course.json") && !name.equals("hints") &&
+                          !name.equals(PYTHON_CACHE_DIR);
                   }
                 });
                 for (File file: files) {
@@ -101,4 +111,20 @@ public class Course {
   public String getDescription() {
     return description;
   }
+
+  public int getTimeLimit() {
+    return timeLimit;
+  }
+
+  public void setTimeLimit(int timeLimit) {
+    this.timeLimit = timeLimit;
+  }
+
+  public ResourceLimits getLimits() {
+    return limits;
+  }
+
+  public void setLimits(ResourceLimits limits) {
+    this.limits = limits;
+  }
 }
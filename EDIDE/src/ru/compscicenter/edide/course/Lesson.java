@@ -16,20 +16,50 @@ public class Lesson implements Stateful{
   public int myIndex = -1;
   public static final String LESSON_DIR = "lesson";
   public LessonInfo myLessonInfo = new LessonInfo();
+  private volatile StudyStatus myStatus = null;
 
+  /**
+   * @return counters of tasks by status, they are computed with status of lesson
+   */
   public LessonInfo getLessonInfo() {
+    updateStatus();
     return myLessonInfo;
   }
 
   @Transient
   public StudyStatus getStatus() {
-    for (Task task : taskList) {
-      StudyStatus taskStatus = task.getStatus();
-      if (taskStatus == StudyStatus.Unchecked || taskStatus == StudyStatus.Failed) {
-        return StudyStatus.Unchecked;
+    return updateStatus();
+  }
+
+  /**
+   * Computes status and counters of lesson if status of any task window was changed since last call
+   */
+  private synchronized StudyStatus updateStatus() {
+    StudyStatus status = myStatus;
+    if (status == null) {
+      int solved = 0;
+      int failed = 0;
+      for (Task task : taskList) {
+        StudyStatus taskStatus = task.getStatus();
+        if (taskStatus == StudyStatus.Solved) {
+          solved++;
+        }
+        else if (taskStatus == StudyStatus.Failed) {
+          failed++;
+        }
       }
+      myLessonInfo.setTaskNum(taskList.size());
+      myLessonInfo.setTaskSolved(solved);
+      myLessonInfo.setTaskFailed(failed);
+      myLessonInfo.setTaskUnchecked(taskList.size() - solved - failed);
+      status = solved == taskList.size() ? StudyStatus.Solved : StudyStatus.Unchecked;
+      myStatus = status;
     }
-    return StudyStatus.Solved;
+    return status;
+  }
+
+  void invalidateStatus() {
+    myStatus = null;
   }
 
   @Override
@@ -77,11 +107,10 @@ public class Lesson implements Stateful{
    */
   public void init(final Course course, boolean isRestarted) {
     myCourse = course;
-    myLessonInfo.setTaskNum(taskList.size());
-    myLessonInfo.setTaskUnchecked(taskList.size());
     for (Task task : taskList) {
       task.init(this, isRestarted);
     }
+    invalidateStatus();
   }
 
   public Lesson next() {
@@ -0,0 +1,96 @@
+package ru.compscicenter.edide.course;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Limits of resources available to code of student when it's run or checked.
+ * Limits are specified for course and may be overridden for task, limit isn't applied if it's not positive
+ */
+public class ResourceLimits {
+  /**
+   * Address space in megabytes
+   */
+  public int memory;
+  /**
+   * CPU time in seconds
+   */
+  public int cpuTime;
+  public int openFiles;
+  /**
+   * Number of processes of user, it's counted for all processes of user running the IDE
+   */
+  public int processes;
+  /**
+   * Size of output and of files written in kilobytes
+   */
+  public int output;
+
+  public ResourceLimits() {
+  }
+
+  public ResourceLimits(int memory, int cpuTime, int openFiles, int processes, int output) {
+    this.memory = memory;
+    this.cpuTime = cpuTime;
+    this.openFiles = openFiles;
+    this.processes = processes;
+    this.output = output;
+  }
+
+  /**
+   * @return limits where limits specified in override replace these ones
+   */
+  @NotNull
+  public ResourceLimits merge(@Nullable final ResourceLimits override) {
+    if (override == null) {
+      return this;
+    }
+    return new ResourceLimits(choose(override.memory, memory), choose(override.cpuTime, cpuTime),
+                              choose(override.openFiles, openFiles), choose(override.processes, processes),
+                              choose(override.output, output));
+  }
+
+  private static int choose(int override, int value) {
+    return override > 0 ? override : value;
+  }
+
+  public int getMemory() {
+    return memory;
+  }
+
+  public void setMemory(int memory) {
+    this.memory = memory;
+  }
+
+  public int getCpuTime() {
+    return cpuTime;
+  }
+
+  public void setCpuTime(int cpuTime) {
+    this.cpuTime = cpuTime;
+  }
+
+  public int getOpenFiles() {
+    return openFiles;
+  }
+
+  public void setOpenFiles(int openFiles) {
+    this.openFiles = openFiles;
+  }
+
+  public int getProcesses() {
+    return processes;
+  }
+
+  public void setProcesses(int processes) {
+    this.processes = processes;
+  }
+
+  public int getOutput() {
+    return output;
+  }
+
+  public void setOutput(int output) {
+    this.output = output;
+  }
+}
@@ -28,6 +28,11 @@ public class Task implements Stateful{
   public int myIndex;
   public List<UserTest> userTests = new ArrayList<UserTest>();
   public static final String USER_TESTS = "userTests";
+  /**
+   * Limits which override limits of course for this task
+   */
+  public ResourceLimits limits;
+  private volatile StudyStatus myStatus = null;
 
   public Map<String, TaskFile> getTaskFiles() {
     return taskFiles;
@@ -35,16 +40,33 @@ public class Task implements Stateful{
 
   @Transient
   public StudyStatus getStatus() {
-    for (TaskFile taskFile : taskFiles.values()) {
-      StudyStatus taskFileStatus = taskFile.getStatus();
-      if (taskFileStatus == StudyStatus.Unchecked) {
-        return StudyStatus.Unchecked;
-      }
-      if (taskFileStatus == StudyStatus.Failed) {
-        return StudyStatus.Failed;
+    StudyStatus status = myStatus;
+    if (status == null) {
+      status = StudyStatus.Solved;
+      for (TaskFile taskFile : taskFiles.values()) {
+        StudyStatus taskFileStatus = taskFile.getStatus();
+        if (taskFileStatus == StudyStatus.Unchecked) {
+          status = StudyStatus.Unchecked;
+          break;
+        }
+        if (taskFileStatus == StudyStatus.Failed) {
+          status = StudyStatus.Failed;
+          break;
+        }
       }
+      myStatus = status;
+    }
+    return status;
+  }
+
+  /**
+   * Drops computed status of task and counters of its lesson
+   */
+  void invalidateStatus() {
+    myStatus = null;
+    if (myLesson != null) {
+      myLesson.invalidateStatus();
     }
-    return StudyStatus.Solved;
   }
 
   public String getName() {
@@ -55,18 +77,11 @@ public class Task implements Stateful{
     this.name = name;
   }
 
+  /**
+   * Sets status to all the windows of task, counters of lesson are updated on next read
+   */
   public void setStatus(@NotNull final StudyStatus status) {
-    LessonInfo lessonInfo = myLesson.getLessonInfo();
-    StudyStatus oldStatus = getStatus();
-    if (status != oldStatus) {
-      if (status == StudyStatus.Failed) {
-        lessonInfo.setTaskFailed(lessonInfo.getTaskFailed() + 1);
-        lessonInfo.setTaskUnchecked(lessonInfo.getTaskUnchecked() - 1);
-      }
-      if (status == StudyStatus.Solved) {
-        lessonInfo.setTaskSolved(lessonInfo.getTaskSolved() + 1);
-        lessonInfo.setTaskUnchecked(lessonInfo.getTaskUnchecked() - 1);
-      }
+    if (status != getStatus()) {
       for (TaskFile taskFile : taskFiles.values()) {
         taskFile.setStatus(status);
       }
@@ -77,6 +92,14 @@ public class Task implements Stateful{
     return userTests;
   }
 
+  public ResourceLimits getLimits() {
+    return limits;
+  }
+
+  public void setLimits(ResourceLimits limits) {
+    this.limits = limits;
+  }
+
   public String getTestFile() {
     return ourTestFile;
   }
@@ -131,6 +154,7 @@ public class Task implements Stateful{
    */
   public void init(final Lesson lesson, boolean isRestarted) {
     myLesson = lesson;
+    invalidateStatus();
     for (TaskFile taskFile : taskFiles.values()) {
       taskFile.init(this, isRestarted);
     }
@@ -174,6 +198,21 @@ public class Task implements Stateful{
     return myLesson;
   }
 
+  /**
+   * @return "lessonX/taskY" path of task directory relative to course root
+   */
+  @Transient
+  public String getTaskDirPath() {
+    return getTaskDirPath(myLesson.getIndex(), myIndex);
+  }
+
+  /**
+   * @return "lessonX/taskY" path of directory of task with specified indexes counted from 0
+   */
+  public static String getTaskDirPath(int lessonIndex, int taskIndex) {
+    return FileUtil.join(Lesson.LESSON_DIR + (lessonIndex + 1), TASK_DIR + (taskIndex + 1));
+  }
+
 
   @Nullable
   public VirtualFile getTaskDir(Project project) {
@@ -8,6 +8,7 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.xmlb.annotations.Transient;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import ru.compscicenter.edide.editor.StudyHighlighterRegistry;
 
 import java.io.File;
 import java.io.IOException;
@@ -27,22 +28,41 @@ public class TaskFile implements Stateful{
   private TaskWindow mySelectedTaskWindow = null;
   public int myIndex = -1;
   private boolean myUserCreated = false;
+  private volatile StudyStatus myStatus = null;
 
   /**
-   * @return if all the windows in task file are marked as resolved
+   * @return if all the windows in task file are marked as resolved,
+   * status is computed once after status of any window was changed
    */
   @Transient
   public StudyStatus getStatus() {
-    for (TaskWindow taskWindow : taskWindows) {
-      StudyStatus windowStatus = taskWindow.getStatus();
-      if (windowStatus == StudyStatus.Failed) {
-        return StudyStatus.Failed;
-      }
-      if (windowStatus == StudyStatus.Unchecked) {
-        return StudyStatus.Unchecked;
+    StudyStatus status = myStatus;
+    if (status == null) {
+      status = StudyStatus.Solved;
+      for (TaskWindow taskWindow : taskWindows) {
+        StudyStatus windowStatus = taskWindow.getStatus();
+        if (windowStatus == StudyStatus.Failed) {
+          status = StudyStatus.Failed;
+          break;
+        }
+        if (windowStatus == StudyStatus.Unchecked) {
+          status = StudyStatus.Unchecked;
+          break;
+        }
       }
+      myStatus = status;
+    }
+    return status;
+  }
+
+  /**
+   * Drops computed status of task file and of its task and lesson
+   */
+  void invalidateStatus() {
+    myStatus = null;
+    if (myTask != null) {
+      myTask.invalidateStatus();
     }
-    return StudyStatus.Solved;
   }
 
   public Task getTask() {
@@ -89,7 +109,56 @@ public class TaskFile implements Stateful{
     FileUtil.copy(resourceFile, fileInProject);
   }
 
+  /**
+   * Starts tracking positions of windows in document by range markers
+   */
+  public void createRangeMarkers(@NotNull final Document document) {
+    for (TaskWindow taskWindow : taskWindows) {
+      taskWindow.createRangeMarker(document);
+    }
+  }
+
+  public void disposeRangeMarkers() {
+    for (TaskWindow taskWindow : taskWindows) {
+      taskWindow.disposeRangeMarker();
+    }
+  }
+
+  /**
+   * Updates persisted positions of windows tracked by range markers
+   */
+  public void updateWindowPositions() {
+    for (TaskWindow taskWindow : taskWindows) {
+      taskWindow.updatePosition();
+    }
+  }
+
+  /**
+   * Updates persisted positions of windows which intersect range including its bounds,
+   * they are used to restore windows whose range markers are invalidated by change of this range
+   *
+   * @return updated windows
+   */
+  @NotNull
+  public List<TaskWindow> updateWindowPositions(@NotNull final Document document, int startOffset, int endOffset) {
+    List<TaskWindow> windows = getTaskWindows(document, startOffset, endOffset);
+    for (TaskWindow taskWindow : windows) {
+      taskWindow.updatePosition();
+    }
+    return windows;
+  }
+
+  /**
+   * @see TaskWindow#restoreInvalidRangeMarker()
+   */
+  public void restoreInvalidRangeMarkers() {
+    for (TaskWindow taskWindow : taskWindows) {
+      taskWindow.restoreInvalidRangeMarker();
+    }
+  }
+
   public void drawAllWindows(Editor editor) {
+    StudyHighlighterRegistry.getInstance(editor).retain(taskWindows);
     for (TaskWindow taskWindow : taskWindows) {
       taskWindow.draw(editor, false, false);
     }
@@ -106,18 +175,99 @@ public class TaskFile implements Stateful{
     if (line >= document.getLineCount()) {
       return null;
     }
-    int column = pos.column;
-    int offset = document.getLineStartOffset(line) + column;
-    for (TaskWindow tw : taskWindows) {
-      if (tw.getLine() <= line) {
-        int twStartOffset = tw.getRealStartOffset(document);
-        int twEndOffset = twStartOffset + tw.getLength();
-        if (twStartOffset <= offset && offset <= twEndOffset) {
-          return tw;
-        }
+    return getTaskWindow(document, document.getLineStartOffset(line) + pos.column);
+  }
+
+  /**
+   * Windows are kept in order of their positions: they are sorted on init and changes of document
+   * shift all the following windows together, so window is found by binary search of its start offset.
+   *
+   * @return the first task window which contains offset including its bounds or null if there is no such window
+   */
+  @Nullable
+  public TaskWindow getTaskWindow(@NotNull final Document document, int offset) {
+    TaskWindow found = null;
+    // windows before the last one starting before offset can contain offset only if they end exactly at it
+    for (int i = findLastStartingBefore(document, offset); i >= 0; i--) {
+      TaskWindow taskWindow = taskWindows.get(i);
+      if (getEndOffset(document, taskWindow) < offset) {
+        break;
       }
+      found = taskWindow;
     }
-    return null;
+    return found;
+  }
+
+  /**
+   * @return task windows which intersect range including its bounds, in order of their positions
+   */
+  @NotNull
+  public List<TaskWindow> getTaskWindows(@NotNull final Document document, int startOffset, int endOffset) {
+    int low = 0;
+    int high = taskWindows.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (getEndOffset(document, taskWindows.get(middle)) < startOffset) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    List<TaskWindow> found = new ArrayList<TaskWindow>();
+    for (int i = low; i < taskWindows.size() && getStartOffset(document, taskWindows.get(i)) <= endOffset; i++) {
+      found.add(taskWindows.get(i));
+    }
+    return found;
+  }
+
+  /**
+   * @return index of the last window which starts before or at offset, -1 if there is no such window
+   */
+  private int findLastStartingBefore(@NotNull final Document document, int offset) {
+    int low = 0;
+    int high = taskWindows.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (getStartOffset(document, taskWindows.get(middle)) <= offset) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    return low - 1;
+  }
+
+  /**
+   * @return index of the first window in specified line or after it
+   */
+  private int findFirstInLine(int line) {
+    int low = 0;
+    int high = taskWindows.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (taskWindows.get(middle).getLine() < line) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Windows out of document are considered to be after its end
+   */
+  private static int getStartOffset(@NotNull final Document document, @NotNull final TaskWindow taskWindow) {
+    int line = taskWindow.getLine();
+    return line >= 0 && line < document.getLineCount() ? taskWindow.getRealStartOffset(document) : Integer.MAX_VALUE;
+  }
+
+  private static int getEndOffset(@NotNull final Document document, @NotNull final TaskWindow taskWindow) {
+    int start = getStartOffset(document, taskWindow);
+    return start == Integer.MAX_VALUE ? start : start + taskWindow.getLength();
   }
 
   /**
@@ -127,13 +277,46 @@ public class TaskFile implements Stateful{
    * @param change    change to be added to line numbers
    */
   public void incrementLines(int startLine, int change) {
-    for (TaskWindow taskTaskWindow : taskWindows) {
-      if (taskTaskWindow.getLine() >= startLine) {
-        taskTaskWindow.setLine(taskTaskWindow.getLine() + change);
-      }
+    incrementLines(findFirstInLine(startLine), taskWindows.size(), change);
+  }
+
+  private void incrementLines(int from, int to, int change) {
+    for (int i = from; i < to; i++) {
+      TaskWindow taskTaskWindow = taskWindows.get(i);
+      taskTaskWindow.setLine(taskTaskWindow.getLine() + change);
     }
   }
 
+  /**
+   * Updates windows after change of document which ended in specified line:
+   * lines of windows after that line are incremented and windows in that line are updated.
+   *
+   * @param line line where changed fragment ended before change
+   * @see ru.compscicenter.edide.course.TaskFile#updateLine(int, int, int, int)
+   */
+  public void updateWindows(int line, int lineChange, int newEndOffsetInLine, int oldEndOffsetInLine) {
+    updateWindows(line, lineChange, newEndOffsetInLine, oldEndOffsetInLine, null, true);
+  }
+
+  /**
+   * Unlike {@link #updateWindows(int, int, int, int)} all the windows starting after changed fragment are moved
+   *
+   * @param resizedWindow window containing changed fragment, it's resized instead of being moved
+   */
+  public void updateWindows(int line, int lineChange, int newEndOffsetInLine, int oldEndOffsetInLine,
+                            @Nullable final TaskWindow resizedWindow) {
+    updateWindows(line, lineChange, newEndOffsetInLine, oldEndOffsetInLine, resizedWindow, false);
+  }
+
+  private void updateWindows(int line, int lineChange, int newEndOffsetInLine, int oldEndOffsetInLine,
+                             @Nullable final TaskWindow resizedWindow, boolean keepContaining) {
+    // bounds are found before update, because windows of the following lines may be moved before this line
+    int from = findFirstInLine(line);
+    int to = findFirstInLine(line + 1);
+    incrementLines(to, taskWindows.size(), lineChange);
+    updateLine(from, to, lineChange, line, newEndOffsetInLine, oldEndOffsetInLine, resizedWindow, keepContaining);
+  }
+
   /**
    * Initializes state of task file
    *
@@ -142,6 +325,7 @@ public class TaskFile implements Stateful{
 
   public void init(final Task task, boolean isRestarted) {
     myTask = task;
+    invalidateStatus();
     for (TaskWindow taskWindow : taskWindows) {
       taskWindow.init(this, isRestarted);
     }
@@ -159,7 +343,8 @@ public class TaskFile implements Stateful{
   }
 
   /**
-   * Updates windows in specific line
+   * Updates windows in specific line. Window isn't moved if change in the same line ends after its start,
+   * as window containing changed fragment is expected to be resized by caller
    *
    * @param lineChange         change in line number
    * @param line               line to be updated
@@ -167,14 +352,26 @@ public class TaskFile implements Stateful{
    * @param oldEndOffsetInLine distance from line start to end of changed fragment
    */
   public void updateLine(int lineChange, int line, int newEndOffsetInLine, int oldEndOffsetInLine) {
-    for (TaskWindow w : taskWindows) {
-      if ((w.getLine() == line) && (w.getStart() >= oldEndOffsetInLine)) {
-        int distance = w.getStart() - oldEndOffsetInLine;
-        if (lineChange != 0 || newEndOffsetInLine <= w.getStart()) {
-          w.setStart(distance + newEndOffsetInLine);
-          w.setLine(line + lineChange);
-        }
+    updateLine(findFirstInLine(line), findFirstInLine(line + 1), lineChange, line, newEndOffsetInLine, oldEndOffsetInLine, null,
+               true);
+  }
+
+  /**
+   * @param keepContaining if window isn't moved when change in the same line ends after its start
+   */
+  private void updateLine(int from, int to, int lineChange, int line, int newEndOffsetInLine, int oldEndOffsetInLine,
+                          @Nullable final TaskWindow resizedWindow, boolean keepContaining) {
+    for (int i = from; i < to; i++) {
+      TaskWindow w = taskWindows.get(i);
+      if (w == resizedWindow || w.getStart() < oldEndOffsetInLine) {
+        continue;
+      }
+      if (keepContaining && lineChange == 0 && newEndOffsetInLine > w.getStart()) {
+        continue;
       }
+      int distance = w.getStart() - oldEndOffsetInLine;
+      w.setStart(distance + newEndOffsetInLine);
+      w.setLine(line + lineChange);
     }
   }
 
@@ -195,6 +392,7 @@ public class TaskFile implements Stateful{
 
   public void setTaskWindows(List<TaskWindow> taskWindows) {
     this.taskWindows = taskWindows;
+    invalidateStatus();
   }
 
   public void setStatus(@NotNull final StudyStatus status) {
@@ -2,17 +2,18 @@ package ru.compscicenter.edide.course;
 
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.RangeMarker;
 import com.intellij.openapi.editor.colors.EditorColors;
 import com.intellij.openapi.editor.colors.EditorColorsManager;
-import com.intellij.openapi.editor.markup.HighlighterLayer;
-import com.intellij.openapi.editor.markup.HighlighterTargetArea;
-import com.intellij.openapi.editor.markup.RangeHighlighter;
 import com.intellij.openapi.editor.markup.TextAttributes;
 import com.intellij.ui.JBColor;
 import org.jetbrains.annotations.NotNull;
+import ru.compscicenter.edide.editor.StudyHighlighterRegistry;
 
 /**
- * Implementation of windows which user should type in
+ * Implementation of windows which user should type in.
+ * While task file is opened position of window is tracked by range marker of document,
+ * persisted line and start are updated from it only when state is saved.
  */
 
 
@@ -29,13 +30,19 @@ public class TaskWindow implements Comparable, Stateful {
   public int myInitialStart = -1;
   public int myInitialLength = -1;
   private StudyStatus myStatus = StudyStatus.Unchecked;
+  private RangeMarker myRangeMarker = null;
 
   public StudyStatus getStatus() {
     return myStatus;
   }
 
   public void setStatus(StudyStatus status) {
-    myStatus = status;
+    if (myStatus != status) {
+      myStatus = status;
+      if (myTaskFile != null) {
+        myTaskFile.invalidateStatus();
+      }
+    }
   }
 
   public void setIndex(int index) {
@@ -43,32 +50,158 @@ public class TaskWindow implements Comparable, Stateful {
   }
 
   public int getLength() {
+    if (hasRangeMarker()) {
+      return myRangeMarker.getEndOffset() - myRangeMarker.getStartOffset();
+    }
     return length;
   }
 
   public void setLength(int length) {
+    Document document = releaseRangeMarker();
     this.length = length;
+    restoreRangeMarker(document);
   }
 
   public int getStart() {
+    if (hasRangeMarker()) {
+      Document document = myRangeMarker.getDocument();
+      int startOffset = myRangeMarker.getStartOffset();
+      return startOffset - document.getLineStartOffset(document.getLineNumber(startOffset));
+    }
     return start;
   }
 
   public void setStart(int start) {
+    Document document = releaseRangeMarker();
     this.start = start;
+    restoreRangeMarker(document);
   }
 
   public void setLine(int line) {
+    Document document = releaseRangeMarker();
     this.line = line;
+    restoreRangeMarker(document);
   }
 
   public int getLine() {
+    if (hasRangeMarker()) {
+      return myRangeMarker.getDocument().getLineNumber(myRangeMarker.getStartOffset());
+    }
     return line;
   }
 
+  /**
+   * Range marker is invalidated when text containing the whole window is replaced,
+   * window is at its last known position kept in line, start and length until marker is restored
+   */
+  private boolean hasRangeMarker() {
+    return myRangeMarker != null && myRangeMarker.isValid();
+  }
+
+  /**
+   * Tracks window again from its last known position if its range marker was invalidated
+   */
+  public void restoreInvalidRangeMarker() {
+    if (myRangeMarker == null || myRangeMarker.isValid()) {
+      return;
+    }
+    Document document = myRangeMarker.getDocument();
+    myRangeMarker.dispose();
+    myRangeMarker = null;
+    fitInto(document);
+    createRangeMarker(document);
+  }
+
+  /**
+   * Moves window into document if document became shorter than its last known position
+   */
+  private void fitInto(@NotNull final Document document) {
+    if (document.getLineCount() == 0) {
+      return;
+    }
+    line = Math.max(0, Math.min(line, document.getLineCount() - 1));
+    int lineStartOffset = document.getLineStartOffset(line);
+    start = Math.max(0, Math.min(start, document.getLineEndOffset(line) - lineStartOffset));
+    length = Math.max(0, Math.min(length, document.getTextLength() - lineStartOffset - start));
+  }
+
+  /**
+   * Starts tracking position of window by range marker which is greedy to both sides,
+   * so text typed at bounds of window gets into it. If previous window ends where this window starts,
+   * text typed between them gets into previous window only.
+   */
+  public void createRangeMarker(@NotNull final Document document) {
+    disposeRangeMarker();
+    if (!isValid(document)) {
+      return;
+    }
+    int startOffset = getRealStartOffset(document);
+    boolean greedyToLeft = !isPreviousWindowAdjacent(document, startOffset);
+    myRangeMarker = document.createRangeMarker(startOffset, startOffset + length);
+    myRangeMarker.setGreedyToLeft(greedyToLeft);
+    myRangeMarker.setGreedyToRight(true);
+  }
+
+  private boolean isPreviousWindowAdjacent(@NotNull final Document document, int startOffset) {
+    if (myTaskFile == null) {
+      return false;
+    }
+    for (TaskWindow taskWindow : myTaskFile.getTaskWindows(document, startOffset, startOffset)) {
+      if (taskWindow == this) {
+        return false;
+      }
+      if (taskWindow.getRealStartOffset(document) + taskWindow.getLength() == startOffset) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Stops tracking position of window, its last position is kept
+   */
+  public void disposeRangeMarker() {
+    updatePosition();
+    if (myRangeMarker != null) {
+      myRangeMarker.dispose();
+      myRangeMarker = null;
+    }
+  }
+
+  /**
+   * Updates persisted line, start and length from range marker
+   */
+  public void updatePosition() {
+    if (hasRangeMarker()) {
+      line = getLine();
+      start = getStart();
+      length = getLength();
+    }
+  }
+
+  /**
+   * Disposes range marker before position is changed directly
+   *
+   * @return document of disposed range marker
+   */
+  private Document releaseRangeMarker() {
+    if (myRangeMarker == null) {
+      return null;
+    }
+    Document document = myRangeMarker.getDocument();
+    disposeRangeMarker();
+    return document;
+  }
+
+  private void restoreRangeMarker(Document document) {
+    if (document != null) {
+      createRangeMarker(document);
+    }
+  }
+
 
   /**
-   * Draw task window with color according to its status
+   * Draw task window with color according to its status, highlighter drawn before is reused or replaced
    */
   public void draw(@NotNull final Editor editor, boolean drawSelection, boolean moveCaret) {
     Document document = editor.getDocument();
@@ -78,29 +211,29 @@ public class TaskWindow implements Comparable, Stateful {
     TextAttributes defaultTestAttributes =
       EditorColorsManager.getInstance().getGlobalScheme().getAttributes(EditorColors.LIVE_TEMPLATE_ATTRIBUTES);
     JBColor color = getColor();
-    int startOffset = document.getLineStartOffset(line) + start;
-    RangeHighlighter
-      rh = editor.getMarkupModel().addRangeHighlighter(startOffset, startOffset + length, HighlighterLayer.LAST + 1,
-                                                       new TextAttributes(defaultTestAttributes.getForegroundColor(),
-                                                                          defaultTestAttributes.getBackgroundColor(), color,
-                                                                          defaultTestAttributes.getEffectType(),
-                                                                          defaultTestAttributes.getFontType()),
-                                                       HighlighterTargetArea.EXACT_RANGE);
+    int startOffset = getRealStartOffset(document);
+    int endOffset = startOffset + getLength();
+    StudyHighlighterRegistry.getInstance(editor)
+      .highlight(this, startOffset, endOffset, new TextAttributes(defaultTestAttributes.getForegroundColor(),
+                                                                  defaultTestAttributes.getBackgroundColor(), color,
+                                                                  defaultTestAttributes.getEffectType(),
+                                                                  defaultTestAttributes.getFontType()));
     if (drawSelection) {
-      editor.getSelectionModel().setSelection(startOffset, startOffset + length);
+      editor.getSelectionModel().setSelection(startOffset, endOffset);
     }
     if (moveCaret) {
       editor.getCaretModel().moveToOffset(startOffset);
     }
-    rh.setGreedyToLeft(true);
-    rh.setGreedyToRight(true);
   }
 
   public boolean isValid(@NotNull final Document document) {
+    if (hasRangeMarker() && myRangeMarker.getDocument() == document) {
+      return true;
+    }
     boolean isLineValid = line < document.getLineCount() && line >= 0;
     if (!isLineValid) return false;
     boolean isStartValid = start >= 0 && start < document.getLineEndOffset(line);
-    boolean isLengthValid = (getRealStartOffset(document) + length) <= document.getTextLength();
+    boolean isLengthValid = (document.getLineStartOffset(line) + start + length) <= document.getTextLength();
     return isLengthValid && isStartValid;
   }
 
@@ -115,6 +248,10 @@ public class TaskWindow implements Comparable, Stateful {
   }
 
   public int getRealStartOffset(@NotNull final Document document) {
+    if (hasRangeMarker() && myRangeMarker.getDocument() == document) {
+      return myRangeMarker.getStartOffset();
+    }
+    // marker of another document says nothing about lines of this one
     return document.getLineStartOffset(line) + start;
   }
 
@@ -142,9 +279,9 @@ public class TaskWindow implements Comparable, Stateful {
     if (taskWindow.getTaskFile() != myTaskFile) {
       throw new ClassCastException();
     }
-    int lineDiff = line - taskWindow.line;
+    int lineDiff = getLine() - taskWindow.getLine();
     if (lineDiff == 0) {
-      return start - taskWindow.start;
+      return getStart() - taskWindow.getStart();
     }
     return lineDiff;
   }
@@ -153,10 +290,12 @@ public class TaskWindow implements Comparable, Stateful {
    * Returns window to its initial state
    */
   public void reset() {
-    myStatus = StudyStatus.Unchecked;
+    setStatus(StudyStatus.Unchecked);
+    Document document = releaseRangeMarker();
     line = myInitialLine;
     start = myInitialStart;
     length = myInitialLength;
+    restoreRangeMarker(document);
   }
 
   public String getHint() {
@@ -0,0 +1,104 @@
+package ru.compscicenter.edide.editor;
+
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.markup.HighlighterLayer;
+import com.intellij.openapi.editor.markup.HighlighterTargetArea;
+import com.intellij.openapi.editor.markup.MarkupModel;
+import com.intellij.openapi.editor.markup.RangeHighlighter;
+import com.intellij.openapi.editor.markup.TextAttributes;
+import com.intellij.openapi.util.Key;
+import org.jetbrains.annotations.NotNull;
+import ru.compscicenter.edide.course.TaskWindow;
+
+import java.util.*;
+
+/**
+ * Highlighters of task windows drawn in one editor.
+ * Every window has at most one highlighter, on redraw it's kept if neither range nor color of window changed
+ * and replaced otherwise, so highlighters don't pile up in markup model of editor.
+ * Registry is kept in user data of editor, so it doesn't outlive editor.
+ */
+public class StudyHighlighterRegistry {
+  private static final Key<StudyHighlighterRegistry> REGISTRY_KEY = Key.create("study.highlighter.registry");
+  private final MarkupModel myMarkupModel;
+  private final Map<TaskWindow, RangeHighlighter> myHighlighters = new HashMap<TaskWindow, RangeHighlighter>();
+
+  public StudyHighlighterRegistry(@NotNull final MarkupModel markupModel) {
+    myMarkupModel = markupModel;
+  }
+
+  /**
+   * Gets registry of editor, it's created on first call and should be released with {@link #release(Editor)}
+   */
+  @NotNull
+  public static StudyHighlighterRegistry getInstance(@NotNull final Editor editor) {
+    StudyHighlighterRegistry registry = editor.getUserData(REGISTRY_KEY);
+    if (registry == null) {
+      registry = new StudyHighlighterRegistry(editor.getMarkupModel());
+      editor.putUserData(REGISTRY_KEY, registry);
+    }
+    return registry;
+  }
+
+  /**
+   * Removes all the highlighters drawn in editor by registry
+   */
+  public static void release(@NotNull final Editor editor) {
+    StudyHighlighterRegistry registry = editor.getUserData(REGISTRY_KEY);
+    if (registry != null) {
+      editor.putUserData(REGISTRY_KEY, null);
+      registry.removeAll();
+    }
+  }
+
+  /**
+   * Draws highlighter of window or keeps existing one if it has the same range and attributes
+   *
+   * @return highlighter of window
+   */
+  @NotNull
+  public RangeHighlighter highlight(@NotNull final TaskWindow taskWindow, int startOffset, int endOffset,
+                                    @NotNull final TextAttributes attributes) {
+    RangeHighlighter highlighter = myHighlighters.get(taskWindow);
+    if (highlighter != null) {
+      if (highlighter.isValid() && highlighter.getStartOffset() == startOffset && highlighter.getEndOffset() == endOffset &&
+          attributes.equals(highlighter.getTextAttributes())) {
+        return highlighter;
+      }
+      remove(taskWindow);
+    }
+    highlighter = myMarkupModel.addRangeHighlighter(startOffset, endOffset, HighlighterLayer.LAST + 1, attributes,
+                                                    HighlighterTargetArea.EXACT_RANGE);
+    highlighter.setGreedyToLeft(true);
+    highlighter.setGreedyToRight(true);
+    myHighlighters.put(taskWindow, highlighter);
+    return highlighter;
+  }
+
+  public void remove(@NotNull final TaskWindow taskWindow) {
+    RangeHighlighter highlighter = myHighlighters.remove(taskWindow);
+    if (highlighter != null && highlighter.isValid()) {
+      myMarkupModel.removeHighlighter(highlighter);
+    }
+  }
+
+  /**
+   * Removes highlighters of windows which aren't in specified ones, e.g. of windows of another task file
+   */
+  public void retain(@NotNull final Collection<TaskWindow> taskWindows) {
+    Set<TaskWindow> retained = new HashSet<TaskWindow>(taskWindows);
+    for (TaskWindow taskWindow : new ArrayList<TaskWindow>(myHighlighters.keySet())) {
+      if (!retained.contains(taskWindow)) {
+        remove(taskWindow);
+      }
+    }
+  }
+
+  public void removeAll() {
+    retain(Collections.<TaskWindow>emptyList());
+  }
+
+  public int getHighlighterCount() {
+    return myHighlighters.size();
+  }
+}
@@ -0,0 +1,20 @@
+import org.junit.Test;
+import ru.compscicenter.edide.course.ResourceLimits;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ResourceLimitsTest {
+  @Test
+  public void testMerge() {
+    ResourceLimits course = new ResourceLimits(256, 5, 0, 0, 1024);
+    ResourceLimits task = new ResourceLimits(512, 0, 16, 0, 0);
+    ResourceLimits limits = course.merge(task);
+    assertEquals(512, limits.getMemory());
+    assertEquals(5, limits.getCpuTime());
+    assertEquals(16, limits.getOpenFiles());
+    assertEquals(0, limits.getProcesses());
+    assertEquals(1024, limits.getOutput());
+    assertSame(course, course.merge(null));
+  }
+}
@@ -0,0 +1,95 @@
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.impl.DocumentImpl;
+import ru.compscicenter.edide.StudyDocumentListener;
+import ru.compscicenter.edide.course.TaskFile;
+import ru.compscicenter.edide.course.TaskWindow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Replays edit session, such as reformatting or replace in file, on synthetic files with one window per line
+ * and compares handling of every change by {@link ru.compscicenter.edide.StudyDocumentListener}
+ * with coalesced bulk update. Total time of replay is printed.
+ * <p/>
+ * Usage: StudyBulkEditBenchmark [edits per line]
+ */
+public class StudyBulkEditBenchmark {
+  private static final int[] WINDOW_COUNTS = {10, 100, 1000, 5000};
+  private static final int WARMUP_ROUNDS = 3;
+  private static final long SEED = 42;
+  private static final String PLACEHOLDER = "type here";
+
+  /**
+   * Recorded change of document
+   */
+  private static class Edit {
+    private final int myLine;
+    private final int myColumn;
+    private final int myOldLength;
+    private final String myText;
+
+    Edit(int line, int column, int oldLength, String text) {
+      myLine = line;
+      myColumn = column;
+      myOldLength = oldLength;
+      myText = text;
+    }
+
+    void replay(Document document) {
+      int offset = document.getLineStartOffset(myLine) + myColumn;
+      document.replaceString(offset, offset + myOldLength, myText);
+    }
+  }
+
+  public static void main(String[] args) {
+    int editsPerLine = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+    Random random = new Random(SEED);
+    System.out.println("windows\tedits\tper change, ms\tbulk, ms");
+    for (int windowCount : WINDOW_COUNTS) {
+      List<Edit> session = new ArrayList<Edit>();
+      for (int line = windowCount - 1; line >= 0; line--) {
+        for (int i = 0; i < editsPerLine; i++) {
+          // indentation and renaming of variable before window, windows themselves are not touched
+          session.add(random.nextBoolean() ? new Edit(line, 0, 0, "  ") : new Edit(line, 0, 1, "var_"));
+        }
+      }
+      long perChangeTime = 0;
+      long bulkTime = 0;
+      for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+        perChangeTime = replay(windowCount, session, false);
+        bulkTime = replay(windowCount, session, true);
+      }
+      System.out.println(windowCount + "\t" + session.size() + "\t" + perChangeTime / 1000000 + "\t" + bulkTime / 1000000);
+    }
+  }
+
+  private static long replay(int windowCount, List<Edit> session, boolean bulk) {
+    StringBuilder text = new StringBuilder();
+    TaskFile taskFile = new TaskFile();
+    for (int line = 0; line < windowCount; line++) {
+      String prefix = "value_" + line + " = ";
+      text.append(prefix).append(PLACEHOLDER).append("\n");
+      TaskWindow taskWindow = new TaskWindow();
+      taskWindow.setLine(line);
+      taskWindow.setStart(prefix.length());
+      taskWindow.setLength(PLACEHOLDER.length());
+      taskFile.getTaskWindows().add(taskWindow);
+    }
+    Document document = new DocumentImpl(text);
+    StudyDocumentListener listener = new StudyDocumentListener(taskFile);
+    document.addDocumentListener(listener);
+    long start = System.nanoTime();
+    if (bulk) {
+      listener.bulkUpdateStarted(document);
+    }
+    for (Edit edit : session) {
+      edit.replay(document);
+    }
+    if (bulk) {
+      listener.bulkUpdateFinished(document);
+    }
+    return System.nanoTime() - start;
+  }
+}
@@ -0,0 +1,38 @@
+import org.junit.Test;
+import ru.compscicenter.edide.StudyBulkEditBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+public class StudyBulkEditBufferTest {
+  @Test
+  public void testChanges() {
+    StudyBulkEditBuffer buffer = new StudyBulkEditBuffer(new int[]{4, 10, 20}, new int[]{6, 12, 25});
+    // insertion before all the windows
+    buffer.change(0, 0, 3);
+    assertWindow(buffer, 0, 7, 9);
+    assertWindow(buffer, 2, 23, 28);
+    // typing inside the first window
+    buffer.change(8, 1, 4);
+    assertWindow(buffer, 0, 7, 12);
+    assertWindow(buffer, 1, 16, 18);
+    // removal of text between windows
+    buffer.change(13, 2, 0);
+    assertWindow(buffer, 1, 14, 16);
+    assertWindow(buffer, 2, 24, 29);
+    assertEquals(3, buffer.getChangeCount());
+  }
+
+  @Test
+  public void testRemovedWindow() {
+    StudyBulkEditBuffer buffer = new StudyBulkEditBuffer(new int[]{2, 6, 12}, new int[]{4, 8, 14});
+    buffer.change(5, 5, 1);
+    assertWindow(buffer, 0, 2, 4);
+    assertWindow(buffer, 1, 6, 6);
+    assertWindow(buffer, 2, 8, 10);
+  }
+
+  private static void assertWindow(StudyBulkEditBuffer buffer, int index, int start, int end) {
+    assertEquals(start, buffer.getStart(index));
+    assertEquals(end, buffer.getEnd(index));
+  }
+}
@@ -0,0 +1,118 @@
+import com.intellij.openapi.util.io.FileUtil;
+import org.junit.Test;
+import ru.compscicenter.edide.StudyCheckCache;
+import ru.compscicenter.edide.StudyFileSnapshot;
+import ru.compscicenter.edide.course.StudyStatus;
+import ru.compscicenter.edide.course.TaskWindow;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class StudyCheckCacheTest {
+  private static StudyFileSnapshot createSnapshot(String windowText) {
+    String text = "a = " + windowText + "\n";
+    StudyFileSnapshot.Window window = new StudyFileSnapshot.Window(new TaskWindow(), 4, windowText.length(), windowText, "5");
+    return new StudyFileSnapshot(text, Collections.singletonList(window));
+  }
+
+  private static StudyCheckCache.Result createResult(String failedMessage) {
+    Map<Integer, StudyStatus> statuses = new HashMap<Integer, StudyStatus>();
+    statuses.put(0, StudyStatus.Failed);
+    return new StudyCheckCache.Result(failedMessage, statuses);
+  }
+
+  @Test
+  public void testKey() {
+    String key = getKey(createSnapshot("42"), "tests", "helper", "1000", "python");
+    assertEquals(key, getKey(createSnapshot("42"), "tests", "helper", "1000", "python"));
+    assertFalse(key.equals(getKey(createSnapshot("43"), "tests", "helper", "1000", "python")));
+    assertFalse(key.equals(getKey(createSnapshot("42"), "tests2", "helper", "1000", "python")));
+    assertFalse(key.equals(getKey(createSnapshot("42"), "tests", "helper2", "1000", "python")));
+    assertFalse(key.equals(getKey(createSnapshot("42"), "tests", null, "1000", "python")));
+    assertFalse(key.equals(getKey(createSnapshot("42"), "tests", "helper", "2000", "python")));
+    assertFalse(key.equals(getKey(createSnapshot("42"), "tests", "helper", "1000", "python3")));
+  }
+
+  private static String getKey(StudyFileSnapshot snapshot, String testsText, String testHelperText, String limitsKey,
+                               String interpreterPath) {
+    return StudyCheckCache.getKey(snapshot, "lesson1/task1/file.py", testsText, testHelperText, "files", limitsKey,
+                                  interpreterPath);
+  }
+
+  @Test
+  public void testTaskFilesKey() throws IOException {
+    File taskDir = FileUtil.createTempDirectory("study_task", null);
+    try {
+      FileUtil.writeToFile(new File(taskDir, "file.py"), "a = 1");
+      FileUtil.writeToFile(new File(taskDir, "input.txt"), "1 2");
+      String key = StudyCheckCache.getTaskFilesKey(taskDir, "file.py");
+      FileUtil.writeToFile(new File(taskDir, "file.py"), "a = 2");
+      assertEquals(key, StudyCheckCache.getTaskFilesKey(taskDir, "file.py"));
+      FileUtil.writeToFile(new File(taskDir, "input.txt"), "1 3");
+      assertFalse(key.equals(StudyCheckCache.getTaskFilesKey(taskDir, "file.py")));
+    }
+    finally {
+      FileUtil.delete(taskDir);
+    }
+  }
+
+  @Test
+  public void testWindowKey() {
+    StudyFileSnapshot snapshot = createTwoWindowsSnapshot("42", "b");
+    StudyFileSnapshot changed = createTwoWindowsSnapshot("42", "c");
+    assertEquals(getWindowKey(snapshot, 0), getWindowKey(changed, 0));
+    assertFalse(getWindowKey(snapshot, 1).equals(getWindowKey(changed, 1)));
+  }
+
+  private static StudyFileSnapshot createTwoWindowsSnapshot(String firstWindowText, String secondWindowText) {
+    String text = "a = " + firstWindowText + "\nprint(" + secondWindowText + ")\n";
+    int secondStart = text.indexOf("(") + 1;
+    return new StudyFileSnapshot(text, Arrays.asList(
+      new StudyFileSnapshot.Window(new TaskWindow(), 4, firstWindowText.length(), firstWindowText, "5"),
+      new StudyFileSnapshot.Window(new TaskWindow(), secondStart, secondWindowText.length(), secondWindowText, "a")));
+  }
+
+  private static String getWindowKey(StudyFileSnapshot snapshot, int index) {
+    StudyFileSnapshot.Variant variant = snapshot.getVariantWithUserWindow(snapshot.getWindows().get(index));
+    return StudyCheckCache.getWindowKey(variant, index, "lesson1/task1/file.py", "tests", "helper", "files", "1000", "python");
+  }
+
+  @Test
+  public void testEviction() {
+    StudyCheckCache cache = new StudyCheckCache(2);
+    cache.put("a", createResult("a"));
+    cache.put("b", createResult("b"));
+    assertNotNull(cache.get("a"));
+    cache.put("c", createResult("c"));
+    assertEquals(2, cache.size());
+    assertNotNull(cache.get("a"));
+    assertNull(cache.get("b"));
+    assertNotNull(cache.get("c"));
+  }
+
+  @Test
+  public void testSaveLoad() throws IOException {
+    File file = File.createTempFile("study_check_cache", ".json");
+    try {
+      StudyCheckCache cache = new StudyCheckCache(2);
+      cache.put("a", createResult("wrong answer"));
+      cache.save(file);
+      StudyCheckCache loaded = new StudyCheckCache(2);
+      loaded.load(file);
+      StudyCheckCache.Result result = loaded.get("a");
+      assertNotNull(result);
+      assertEquals("wrong answer", result.getFailedMessage());
+      assertEquals(StudyStatus.Failed, result.getWindowStatus(0));
+      assertNull(result.getWindowStatus(1));
+    }
+    finally {
+      assertTrue(file.delete());
+    }
+  }
+}
@@ -0,0 +1,75 @@
+import com.intellij.openapi.util.io.FileUtil;
+import org.junit.Test;
+import ru.compscicenter.edide.StudyCourseLinter;
+import ru.compscicenter.edide.course.TaskFile;
+import ru.compscicenter.edide.course.TaskWindow;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StudyCourseLinterTest {
+  private static final String TEXT = "a = 42\nprint(b)\n";
+
+  @Test
+  public void testValidWindows() {
+    TaskFile taskFile = new TaskFile();
+    taskFile.getTaskWindows().add(createWindow(0, 4, 2, "a.docs"));
+    taskFile.getTaskWindows().add(createWindow(1, 6, 1, ""));
+    assertTrue(StudyCourseLinter.lintTaskFile(taskFile, TEXT, new HashSet<String>(Arrays.asList("a.docs"))).isEmpty());
+  }
+
+  @Test
+  public void testInvalidWindows() {
+    TaskFile taskFile = new TaskFile();
+    taskFile.getTaskWindows().add(createWindow(1, 6, 1, "missing.docs"));
+    taskFile.getTaskWindows().add(createWindow(0, 4, 2, null));
+    taskFile.getTaskWindows().add(createWindow(5, 0, 1, null));
+    taskFile.getTaskWindows().add(createWindow(0, 7, 1, null));
+    taskFile.getTaskWindows().add(createWindow(2, 0, 1, null));
+    List<String> problems = StudyCourseLinter.lintTaskFile(taskFile, TEXT, Collections.<String>emptySet());
+    assertEquals(Arrays.asList("window 1: hint missing.docs not found in hints",
+                               "window 2: overlaps previous window or is listed before it",
+                               "window 3: line 5 is out of file with 3 lines",
+                               "window 4: start 7 is out of line 0 of length 6",
+                               "window 5: length 1 is out of file"), problems);
+  }
+
+  @Test
+  public void testCourseWindowsAreLintedInListedOrder() throws Exception {
+    File courseDir = FileUtil.createTempDirectory("study_lint", null);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      FileUtil.writeToFile(new File(courseDir, "course.json"),
+                           "{\"lessons\": [{\"task_list\": [{\"task_files\": {\"file.py\": {\"task_windows\": [" +
+                           "{\"line\": 1, \"start\": 6, \"length\": 1}, {\"line\": 0, \"start\": 4, \"length\": 2}" +
+                           "]}}}]}]}");
+      File taskDir = new File(courseDir, FileUtil.join("lesson1", "task1"));
+      FileUtil.writeToFile(new File(taskDir, "file.py"), TEXT);
+      FileUtil.writeToFile(new File(taskDir, "tests.py"), "");
+      assertEquals(Arrays.asList(FileUtil.join("lesson1", "task1", "file.py") +
+                                 ": window 2: overlaps previous window or is listed before it"),
+                   StudyCourseLinter.lintCourse(courseDir, executor));
+    }
+    finally {
+      executor.shutdown();
+      FileUtil.delete(courseDir);
+    }
+  }
+
+  private static TaskWindow createWindow(int line, int start, int length, String hint) {
+    TaskWindow window = new TaskWindow();
+    window.setLine(line);
+    window.setStart(start);
+    window.setLength(length);
+    window.hint = hint;
+    return window;
+  }
+}
@@ -0,0 +1,127 @@
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.impl.DocumentImpl;
+import ru.compscicenter.edide.StudyDocumentListener;
+import ru.compscicenter.edide.StudyEditSession;
+import ru.compscicenter.edide.course.TaskFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Replays edit sessions recorded with {@link ru.compscicenter.edide.StudyEditRecorder} without editor
+ * and measures time and allocated memory per change for every way of tracking windows.
+ * Document without tracked windows is replayed too, its cost is included in the other numbers.
+ * Synthetic session of typing in windows of large file is replayed if no logs are given.
+ * <p/>
+ * Usage: StudyEditReplayBenchmark [session log]...
+ */
+public class StudyEditReplayBenchmark {
+  private static final String[] MODES = {"document", "listener", "bulk", "markers"};
+  private static final int WARMUP_ROUNDS = 5;
+  private static final long SEED = 42;
+  private static final int SYNTHETIC_WINDOWS = 1000;
+  private static final int SYNTHETIC_CHANGES = 20000;
+
+  public static void main(String[] args) throws IOException {
+    List<String> names = new ArrayList<String>();
+    List<StudyEditSession> sessions = new ArrayList<StudyEditSession>();
+    for (String arg : args) {
+      names.add(new File(arg).getName());
+      sessions.add(StudyEditSession.read(new File(arg)));
+    }
+    if (sessions.isEmpty()) {
+      names.add("synthetic");
+      sessions.add(generate(new Random(SEED)));
+    }
+    System.out.println("session\tchanges\tmode\tns per change\tbytes per change");
+    for (int i = 0; i < sessions.size(); i++) {
+      StudyEditSession session = sessions.get(i);
+      int changes = Math.max(1, session.getChanges().size());
+      for (String mode : MODES) {
+        long[] result = null;
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+          result = replay(session, mode);
+        }
+        System.out.println(names.get(i) + "\t" + session.getChanges().size() + "\t" + mode + "\t" +
+                           result[0] / changes + "\t" + result[1] / changes);
+      }
+    }
+  }
+
+  /**
+   * @return nanoseconds and bytes allocated by replay
+   */
+  private static long[] replay(StudyEditSession session, String mode) {
+    Document document = new DocumentImpl(session.getText());
+    TaskFile taskFile = session.createTaskFile();
+    StudyDocumentListener listener = null;
+    if (mode.equals("listener") || mode.equals("bulk")) {
+      listener = new StudyDocumentListener(taskFile);
+      document.addDocumentListener(listener);
+    }
+    else if (mode.equals("markers")) {
+      taskFile.createRangeMarkers(document);
+    }
+    long allocated = getAllocatedBytes();
+    long start = System.nanoTime();
+    if (mode.equals("bulk")) {
+      listener.bulkUpdateStarted(document);
+    }
+    session.replay(document);
+    if (mode.equals("bulk")) {
+      listener.bulkUpdateFinished(document);
+    }
+    long time = System.nanoTime() - start;
+    allocated = getAllocatedBytes() - allocated;
+    taskFile.disposeRangeMarkers();
+    return new long[]{time, allocated};
+  }
+
+  private static long getAllocatedBytes() {
+    return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * Student types in random windows of file with one window per line, sometimes erasing typed text
+   */
+  private static StudyEditSession generate(Random random) {
+    StringBuilder text = new StringBuilder();
+    List<int[]> windows = new ArrayList<int[]>();
+    List<int[]> offsets = new ArrayList<int[]>();
+    for (int line = 0; line < SYNTHETIC_WINDOWS; line++) {
+      String prefix = "value_" + line + " = ";
+      windows.add(new int[]{line, prefix.length(), 0});
+      text.append(prefix);
+      offsets.add(new int[]{text.length(), text.length()});
+      text.append("\n");
+    }
+    String initialText = text.toString();
+    List<StudyEditSession.Change> changes = new ArrayList<StudyEditSession.Change>();
+    for (int i = 0; i < SYNTHETIC_CHANGES; i++) {
+      int index = random.nextInt(offsets.size());
+      int[] window = offsets.get(index);
+      int delta;
+      if (window[1] > window[0] && random.nextInt(4) == 0) {
+        changes.add(new StudyEditSession.Change(100000000, window[1] - 1, text.substring(window[1] - 1, window[1]), ""));
+        text.deleteCharAt(window[1] - 1);
+        delta = -1;
+      }
+      else {
+        String typed = String.valueOf((char)('a' + random.nextInt(26)));
+        changes.add(new StudyEditSession.Change(100000000, window[1], "", typed));
+        text.insert(window[1], typed);
+        delta = 1;
+      }
+      window[1] += delta;
+      for (int j = index + 1; j < offsets.size(); j++) {
+        offsets.get(j)[0] += delta;
+        offsets.get(j)[1] += delta;
+      }
+    }
+    return new StudyEditSession(initialText, windows, changes);
+  }
+}
@@ -0,0 +1,74 @@
+import org.junit.Before;
+import org.junit.Test;
+import ru.compscicenter.edide.StudyFileSnapshot;
+import ru.compscicenter.edide.course.TaskFile;
+import ru.compscicenter.edide.course.TaskWindow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class StudyFileSnapshotTest {
+  private StudyFileSnapshot mySnapshot = null;
+
+  @Before
+  public void setUp() {
+    List<StudyFileSnapshot.Window> windows = new ArrayList<StudyFileSnapshot.Window>();
+    windows.add(new StudyFileSnapshot.Window(new TaskWindow(), 13, 1, "b", "a"));
+    windows.add(new StudyFileSnapshot.Window(new TaskWindow(), 4, 2, "42", "5"));
+    mySnapshot = new StudyFileSnapshot("a = 42\nprint(b)\n", windows);
+  }
+
+  @Test
+  public void testVariants() {
+    StudyFileSnapshot.Variant answers = mySnapshot.getAnswersVariant();
+    assertEquals("a = 5\nprint(a)\n", answers.getText());
+    assertEquals(Arrays.asList("5", "a"), answers.getWindowTexts());
+
+    StudyFileSnapshot.Variant user = mySnapshot.getUserVariant();
+    assertEquals("a = 42\nprint(b)\n", user.getText());
+    assertEquals(Arrays.asList("42", "b"), user.getWindowTexts());
+    assertEquals("[\"42\",\"b\"]", user.getWindowsJson());
+
+    StudyFileSnapshot.Window firstWindow = mySnapshot.getWindows().get(0);
+    StudyFileSnapshot.Variant withUserWindow = mySnapshot.getVariantWithUserWindow(firstWindow);
+    assertEquals("a = 42\nprint(a)\n", withUserWindow.getText());
+    assertEquals(Arrays.asList("42", "a"), withUserWindow.getWindowTexts());
+  }
+
+  @Test
+  public void testCreateFromText() {
+    TaskFile taskFile = new TaskFile();
+    taskFile.getTaskWindows().add(createWindow(0, 4, 2, "5"));
+    taskFile.getTaskWindows().add(createWindow(1, 6, 1, "a"));
+    taskFile.getTaskWindows().add(createWindow(5, 0, 1, "x"));
+    StudyFileSnapshot snapshot = StudyFileSnapshot.create("a = 42\nprint(b)\n", taskFile);
+    assertEquals(2, snapshot.getWindows().size());
+    assertEquals("a = 42\nprint(b)\n", snapshot.getUserVariant().getText());
+    assertEquals("a = 5\nprint(a)\n", snapshot.getAnswersVariant().getText());
+  }
+
+  @Test
+  public void testOverlappingWindowsAreSkipped() {
+    List<StudyFileSnapshot.Window> windows = new ArrayList<StudyFileSnapshot.Window>();
+    windows.add(new StudyFileSnapshot.Window(new TaskWindow(), 4, 2, "42", "5"));
+    windows.add(new StudyFileSnapshot.Window(new TaskWindow(), 5, 3, "2\np", "x"));
+    windows.add(new StudyFileSnapshot.Window(new TaskWindow(), 6, 0, "", "y"));
+    windows.add(new StudyFileSnapshot.Window(new TaskWindow(), 16, 1, "", "z"));
+    StudyFileSnapshot snapshot = new StudyFileSnapshot("a = 42\nprint(b)\n", windows);
+    assertEquals(2, snapshot.getWindows().size());
+    assertEquals("a = 42\nprint(b)\n", snapshot.getUserVariant().getText());
+    assertEquals("a = 5y\nprint(b)\n", snapshot.getAnswersVariant().getText());
+  }
+
+  private static TaskWindow createWindow(int line, int start, int length, String possibleAnswer) {
+    TaskWindow window = new TaskWindow();
+    window.setLine(line);
+    window.setStart(start);
+    window.setLength(length);
+    window.setPossibleAnswer(possibleAnswer);
+    return window;
+  }
+}
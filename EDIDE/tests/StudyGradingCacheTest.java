@@ -0,0 +1,60 @@
+import org.junit.Test;
+import ru.compscicenter.edide.StudyCheckCache;
+import ru.compscicenter.edide.StudyGradingCache;
+import ru.compscicenter.edide.course.StudyStatus;
+
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class StudyGradingCacheTest {
+  @Test
+  public void testNormalize() {
+    assertEquals("a = 1\n  print(a)", StudyGradingCache.normalize("a = 1  \r\n  print(a)\t\n\n"));
+    assertEquals(StudyGradingCache.normalize("x\n"), StudyGradingCache.normalize("x"));
+  }
+
+  @Test
+  public void testIdenticalSubmissionsGradedOnce() throws Exception {
+    final StudyGradingCache cache = new StudyGradingCache();
+    final AtomicInteger gradings = new AtomicInteger();
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Callable<StudyCheckCache.Result> grading = new Callable<StudyCheckCache.Result>() {
+        @Override
+        public StudyCheckCache.Result call() throws Exception {
+          return cache.grade("key", new Callable<StudyCheckCache.Result>() {
+            @Override
+            public StudyCheckCache.Result call() throws Exception {
+              gradings.incrementAndGet();
+              started.countDown();
+              release.await();
+              return new StudyCheckCache.Result("failed", new HashMap<Integer, StudyStatus>());
+            }
+          });
+        }
+      };
+      Future<StudyCheckCache.Result> first = executor.submit(grading);
+      started.await();
+      Future<StudyCheckCache.Result> second = executor.submit(grading);
+      Thread.sleep(50);
+      release.countDown();
+      assertEquals("failed", first.get().getFailedMessage());
+      assertEquals("failed", second.get().getFailedMessage());
+      assertEquals(1, gradings.get());
+      assertEquals(1, cache.getHits());
+      assertEquals(1, cache.getMisses());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+}
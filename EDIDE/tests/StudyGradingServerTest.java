@@ -0,0 +1,130 @@
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ru.compscicenter.edide.StudyBatchGrader;
+import ru.compscicenter.edide.StudyGradingServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StudyGradingServerTest {
+  private static final String SUBMISSION = "{\"lesson\": 1, \"task\": 2, \"file\": \"file.py\", \"text\": \"print 1\"}";
+  private final CountDownLatch myRelease = new CountDownLatch(1);
+  private final Semaphore myStarted = new Semaphore(0);
+  private StudyGradingServer myServer;
+
+  @Before
+  public void setUp() throws IOException {
+    StudyGradingServer.Grader grader = new StudyGradingServer.Grader() {
+      @NotNull
+      @Override
+      public StudyBatchGrader.TaskResult grade(@NotNull final StudyGradingServer.Submission submission) {
+        if (submission.lesson != 1) {
+          throw new IllegalArgumentException("unknown lesson");
+        }
+        myStarted.release();
+        try {
+          myRelease.await();
+        }
+        catch (InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+        StudyBatchGrader.TaskResult result = new StudyBatchGrader.TaskResult();
+        result.lesson = submission.lesson;
+        result.task = submission.task;
+        result.file = submission.file;
+        result.status = StudyBatchGrader.SOLVED;
+        return result;
+      }
+    };
+    myServer = new StudyGradingServer(new InetSocketAddress("127.0.0.1", 0), grader, 1, 1);
+    myServer.start();
+  }
+
+  @After
+  public void tearDown() {
+    myRelease.countDown();
+    myServer.stop();
+  }
+
+  @Test
+  public void testRejectsWhenQueueIsFull() throws Exception {
+    ExecutorService clients = Executors.newFixedThreadPool(2);
+    try {
+      List<Future<Integer>> accepted = new ArrayList<Future<Integer>>();
+      accepted.add(clients.submit(new Post(SUBMISSION)));
+      assertTrue(myStarted.tryAcquire(10, TimeUnit.SECONDS));
+      accepted.add(clients.submit(new Post(SUBMISSION)));
+      for (int i = 0; i < 200 && myServer.getQueueSize() == 0; i++) {
+        Thread.sleep(50);
+      }
+      assertEquals(1, myServer.getQueueSize());
+      assertEquals(StudyGradingServer.TOO_MANY_REQUESTS, post(SUBMISSION));
+      myRelease.countDown();
+      for (Future<Integer> code : accepted) {
+        assertEquals(200, (int)code.get(10, TimeUnit.SECONDS));
+      }
+    }
+    finally {
+      clients.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testBadSubmission() throws Exception {
+    myRelease.countDown();
+    assertEquals(400, post("{\"lesson\": 1"));
+    assertEquals(400, post("{\"lesson\": 1, \"task\": 1}"));
+    assertEquals(400, post("{\"lesson\": 7, \"task\": 1, \"file\": \"file.py\", \"text\": \"\"}"));
+    assertEquals(200, post(SUBMISSION));
+  }
+
+  private class Post implements Callable<Integer> {
+    private final String myBody;
+
+    Post(@NotNull final String body) {
+      myBody = body;
+    }
+
+    @Override
+    public Integer call() throws IOException {
+      return post(myBody);
+    }
+  }
+
+  private int post(@NotNull final String body) throws IOException {
+    URL url = new URL("http://127.0.0.1:" + myServer.getPort() + StudyGradingServer.CHECK_PATH);
+    HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+    try {
+      connection.setRequestMethod("POST");
+      connection.setDoOutput(true);
+      OutputStream output = connection.getOutputStream();
+      try {
+        output.write(body.getBytes("UTF-8"));
+      }
+      finally {
+        output.close();
+      }
+      int code = connection.getResponseCode();
+      InputStream input = code < 400 ? connection.getInputStream() : connection.getErrorStream();
+      if (input != null) {
+        input.close();
+      }
+      return code;
+    }
+    finally {
+      connection.disconnect();
+    }
+  }
+}
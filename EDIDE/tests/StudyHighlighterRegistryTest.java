@@ -0,0 +1,105 @@
+import com.intellij.openapi.editor.markup.EffectType;
+import com.intellij.openapi.editor.markup.MarkupModel;
+import com.intellij.openapi.editor.markup.RangeHighlighter;
+import com.intellij.openapi.editor.markup.TextAttributes;
+import org.junit.Test;
+import ru.compscicenter.edide.course.TaskWindow;
+import ru.compscicenter.edide.editor.StudyHighlighterRegistry;
+
+import java.awt.*;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class StudyHighlighterRegistryTest {
+  private static final TextAttributes UNCHECKED = new TextAttributes(null, null, Color.BLUE, EffectType.BOXED, Font.PLAIN);
+  private static final TextAttributes FAILED = new TextAttributes(null, null, Color.RED, EffectType.BOXED, Font.PLAIN);
+  private final Set<RangeHighlighter> myHighlighters = new HashSet<RangeHighlighter>();
+  private int myAddedCount = 0;
+
+  @Test
+  public void testHighlighterCountIsConstant() {
+    StudyHighlighterRegistry registry = new StudyHighlighterRegistry(createMarkupModel());
+    List<TaskWindow> taskWindows = Arrays.asList(new TaskWindow(), new TaskWindow(), new TaskWindow());
+    for (int check = 0; check < 100; check++) {
+      registry.retain(taskWindows);
+      for (int i = 0; i < taskWindows.size(); i++) {
+        // status of the second window changes on every check
+        TextAttributes attributes = i == 1 && check % 2 == 1 ? FAILED : UNCHECKED;
+        registry.highlight(taskWindows.get(i), i * 10, i * 10 + 5, attributes);
+      }
+      assertEquals(taskWindows.size(), myHighlighters.size());
+      assertEquals(taskWindows.size(), registry.getHighlighterCount());
+    }
+    // only highlighter of window with changed color is redrawn
+    assertEquals(taskWindows.size() + 99, myAddedCount);
+  }
+
+  @Test
+  public void testRedrawOnChange() {
+    StudyHighlighterRegistry registry = new StudyHighlighterRegistry(createMarkupModel());
+    TaskWindow taskWindow = new TaskWindow();
+    RangeHighlighter highlighter = registry.highlight(taskWindow, 3, 7, UNCHECKED);
+    assertSame(highlighter, registry.highlight(taskWindow, 3, 7, new TextAttributes(null, null, Color.BLUE, EffectType.BOXED, Font.PLAIN)));
+    RangeHighlighter moved = registry.highlight(taskWindow, 4, 8, UNCHECKED);
+    assertEquals(Collections.singleton(moved), myHighlighters);
+    registry.retain(Collections.<TaskWindow>emptyList());
+    assertEquals(0, myHighlighters.size());
+    assertEquals(0, registry.getHighlighterCount());
+  }
+
+  /**
+   * Markup model which only keeps highlighters added to it
+   */
+  private MarkupModel createMarkupModel() {
+    return (MarkupModel)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{MarkupModel.class}, new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        if (method.getName().equals("addRangeHighlighter")) {
+          RangeHighlighter highlighter = createHighlighter((Integer)args[0], (Integer)args[1], (TextAttributes)args[3]);
+          myHighlighters.add(highlighter);
+          myAddedCount++;
+          return highlighter;
+        }
+        if (method.getName().equals("removeHighlighter")) {
+          myHighlighters.remove(args[0]);
+          return null;
+        }
+        throw new UnsupportedOperationException(method.getName());
+      }
+    });
+  }
+
+  private RangeHighlighter createHighlighter(final int startOffset, final int endOffset, final TextAttributes attributes) {
+    return (RangeHighlighter)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{RangeHighlighter.class}, new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if (name.equals("isValid")) {
+          return myHighlighters.contains(proxy);
+        }
+        if (name.equals("getStartOffset")) {
+          return startOffset;
+        }
+        if (name.equals("getEndOffset")) {
+          return endOffset;
+        }
+        if (name.equals("getTextAttributes")) {
+          return attributes;
+        }
+        if (name.equals("hashCode")) {
+          return System.identityHashCode(proxy);
+        }
+        if (name.equals("equals")) {
+          return proxy == args[0];
+        }
+        return null;
+      }
+    });
+  }
+}
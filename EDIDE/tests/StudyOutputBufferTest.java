@@ -0,0 +1,25 @@
+import org.junit.Test;
+import ru.compscicenter.edide.StudyOutputBuffer;
+
+import static org.junit.Assert.*;
+
+public class StudyOutputBufferTest {
+  @Test
+  public void testShortOutput() {
+    StudyOutputBuffer buffer = new StudyOutputBuffer(10);
+    assertTrue(buffer.isEmpty());
+    buffer.append("abc");
+    buffer.append("de");
+    assertEquals("abcde", buffer.getText());
+    assertEquals(0, buffer.getSkipped());
+  }
+
+  @Test
+  public void testHeadAndTail() {
+    StudyOutputBuffer buffer = new StudyOutputBuffer(6);
+    buffer.append("abcdef");
+    buffer.append("ghij");
+    assertEquals(4, buffer.getSkipped());
+    assertEquals("abc\n... 4 characters skipped ...\nhij", buffer.getText());
+  }
+}
@@ -0,0 +1,70 @@
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.io.FileUtil;
+import org.junit.Before;
+import org.junit.Test;
+import ru.compscicenter.edide.StudyProcessManager;
+import ru.compscicenter.edide.StudyResourceManger;
+import ru.compscicenter.edide.course.ResourceLimits;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs scripts exceeding resource limits in sandbox and checks limit reported by it.
+ * Interpreter is set by system property study.test.python, python from PATH is used by default.
+ */
+public class StudySandboxTest {
+  private static final String PYTHON = System.getProperty("study.test.python", "python");
+  private File mySandbox;
+
+  @Before
+  public void setUp() {
+    assumeTrue(!SystemInfo.isWindows);
+    mySandbox = StudyProcessManager.getScriptFile(StudyResourceManger.STUDY_SANDBOX);
+    assertNotNull(mySandbox);
+  }
+
+  @Test
+  public void testMemoryLimit() throws Exception {
+    assertEquals("Memory limit exceeded", run("l = [0] * 10 ** 9\n", new ResourceLimits(64, 0, 0, 0, 0)));
+  }
+
+  @Test
+  public void testCpuTimeLimit() throws Exception {
+    assertEquals("CPU time limit exceeded", run("while True:\n    pass\n", new ResourceLimits(0, 1, 0, 0, 0)));
+  }
+
+  @Test
+  public void testOutputLimit() throws Exception {
+    assertEquals("Output limit exceeded", run("while True:\n    print('x' * 100)\n", new ResourceLimits(0, 0, 0, 0, 1)));
+  }
+
+  @Test
+  public void testNoLimitExceeded() throws Exception {
+    assertNull(run("print('x' * 100)\n", new ResourceLimits(64, 1, 0, 0, 1)));
+  }
+
+  private String run(String script, ResourceLimits limits) throws IOException, InterruptedException {
+    File scriptFile = FileUtil.createTempFile("study_sandbox", ".py");
+    try {
+      FileUtil.writeToFile(scriptFile, script);
+      Process process = new ProcessBuilder(Arrays.asList(PYTHON, mySandbox.getPath(), StudyProcessManager.toJson(limits).toString(),
+                                                         PYTHON, scriptFile.getPath())).start();
+      process.getOutputStream().close();
+      // sandbox stops forwarding output at its limit, so error output fits into pipe while output is read
+      FileUtil.loadBytes(process.getInputStream());
+      String errorOutput = new String(FileUtil.loadBytes(process.getErrorStream()), "UTF-8");
+      process.waitFor();
+      return StudyProcessManager.getExceededLimit(errorOutput);
+    }
+    finally {
+      FileUtil.delete(scriptFile);
+    }
+  }
+}
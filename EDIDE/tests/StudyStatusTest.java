@@ -0,0 +1,54 @@
+import org.junit.Before;
+import org.junit.Test;
+import ru.compscicenter.edide.course.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class StudyStatusTest {
+  private Course myCourse = null;
+  private Lesson myLesson = null;
+
+  @Before
+  public void setUp() {
+    myCourse = new Course();
+    myLesson = new Lesson();
+    for (int i = 0; i < 2; i++) {
+      Task task = new Task();
+      TaskFile taskFile = new TaskFile();
+      taskFile.getTaskWindows().add(new TaskWindow());
+      taskFile.getTaskWindows().add(new TaskWindow());
+      task.getTaskFiles().put("file.py", taskFile);
+      myLesson.getTaskList().add(task);
+    }
+    myCourse.getLessons().add(myLesson);
+    myCourse.init(false);
+  }
+
+  @Test
+  public void testStatusIsUpdatedByWindows() {
+    Task task = myLesson.getTaskList().get(0);
+    TaskFile taskFile = task.getFile("file.py");
+    assertEquals(StudyStatus.Unchecked, myLesson.getStatus());
+    assertEquals(2, myLesson.getLessonInfo().getTaskUnchecked());
+
+    taskFile.getTaskWindows().get(0).setStatus(StudyStatus.Failed);
+    assertEquals(StudyStatus.Failed, taskFile.getStatus());
+    assertEquals(StudyStatus.Failed, task.getStatus());
+    assertEquals(1, myLesson.getLessonInfo().getTaskFailed());
+
+    task.setStatus(StudyStatus.Solved);
+    assertEquals(StudyStatus.Solved, taskFile.getStatus());
+    assertEquals(1, myLesson.getLessonInfo().getTaskSolved());
+    assertEquals(0, myLesson.getLessonInfo().getTaskFailed());
+    assertEquals(StudyStatus.Unchecked, myLesson.getStatus());
+
+    myLesson.getTaskList().get(1).setStatus(StudyStatus.Solved);
+    assertEquals(StudyStatus.Solved, myLesson.getStatus());
+    assertEquals(2, myLesson.getLessonInfo().getTaskSolved());
+
+    taskFile.getTaskWindows().get(1).reset();
+    assertEquals(StudyStatus.Unchecked, task.getStatus());
+    assertEquals(StudyStatus.Unchecked, myLesson.getStatus());
+    assertEquals(1, myLesson.getLessonInfo().getTaskUnchecked());
+  }
+}
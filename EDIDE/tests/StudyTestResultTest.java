@@ -0,0 +1,50 @@
+import org.junit.Test;
+import ru.compscicenter.edide.StudyTestResult;
+
+import static org.junit.Assert.*;
+
+public class StudyTestResultTest {
+  @Test
+  public void testJson() {
+    StudyTestResult result = StudyTestResult.parse(
+      "#study_plugin_result {\"version\": 1, \"name\": \"test_y\", \"status\": \"failed\", \"duration\": 0.25, \"message\": \"bad\\nline\"}");
+    assertNotNull(result);
+    assertEquals("test_y", result.getName());
+    assertFalse(result.isPassed());
+    assertEquals("bad\nline", result.getMessage());
+    assertEquals(250, result.getDuration());
+
+    StudyTestResult passed = StudyTestResult.parse("#study_plugin_result {\"version\": 1, \"name\": null, \"status\": \"passed\"}");
+    assertNotNull(passed);
+    assertTrue(passed.isPassed());
+    assertNull(passed.getName());
+    assertEquals(-1, passed.getDuration());
+  }
+
+  @Test
+  public void testUnknownVersion() {
+    StudyTestResult result = StudyTestResult.parse("#study_plugin_result {\"version\": 2, \"name\": \"test_y\", \"status\": \"passed\"}");
+    assertNotNull(result);
+    assertFalse(result.isPassed());
+    assertEquals("test_y", result.getName());
+    assertNotNull(StudyTestResult.parse("#study_plugin_result {\"status\": \"passed\"}"));
+  }
+
+  @Test
+  public void testLegacy() {
+    StudyTestResult failed = StudyTestResult.parse("#study_plugin FAILED + You should modify the file");
+    assertNotNull(failed);
+    assertFalse(failed.isPassed());
+    assertEquals("You should modify the file", failed.getMessage());
+    StudyTestResult passed = StudyTestResult.parse("#study_plugin test OK");
+    assertNotNull(passed);
+    assertTrue(passed.isPassed());
+  }
+
+  @Test
+  public void testNotResult() {
+    assertNull(StudyTestResult.parse("Hello, world"));
+    assertNull(StudyTestResult.parse("#study_plugin_result {broken"));
+    assertNull(StudyTestResult.parse("#study_plugin_result {\"version\": 1}"));
+  }
+}
@@ -0,0 +1,57 @@
+import ru.compscicenter.edide.StudyWindowLocalizer;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares localization modes on synthetic tasks with many windows. Every check sleeps
+ * for time of starting test process, number of checks and wall time are printed.
+ * <p/>
+ * Usage: StudyWindowLocalizerBenchmark [check time in ms] [threads]
+ */
+public class StudyWindowLocalizerBenchmark {
+  private static final int[] WINDOW_COUNTS = {4, 16, 64};
+  private static final int[] WRONG_WINDOW_COUNTS = {1, 2, 4};
+  private static final long SEED = 42;
+
+  public static void main(String[] args) throws Exception {
+    final long checkTime = args.length > 0 ? Long.parseLong(args[0]) : 50;
+    int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    Random random = new Random(SEED);
+    System.out.println("check time " + checkTime + " ms, " + threads + " threads");
+    System.out.println("windows\twrong\tmode\tchecks\ttime, ms");
+    try {
+      for (int windowCount : WINDOW_COUNTS) {
+        for (int wrongCount : WRONG_WINDOW_COUNTS) {
+          List<Integer> windows = new ArrayList<Integer>();
+          for (int i = 0; i < windowCount; i++) {
+            windows.add(i);
+          }
+          List<Integer> shuffled = new ArrayList<Integer>(windows);
+          Collections.shuffle(shuffled, random);
+          final Set<Integer> wrongWindows = new HashSet<Integer>(shuffled.subList(0, Math.min(wrongCount, windowCount)));
+          for (StudyWindowLocalizer.Mode mode : StudyWindowLocalizer.Mode.values()) {
+            final AtomicInteger checks = new AtomicInteger();
+            long start = System.currentTimeMillis();
+            new StudyWindowLocalizer(mode, executor).localize(windows, true, new StudyWindowLocalizer.Checker<Integer>() {
+              @Override
+              public boolean passes(List<Integer> userWindows) throws Exception {
+                checks.incrementAndGet();
+                Thread.sleep(checkTime);
+                return Collections.disjoint(userWindows, wrongWindows);
+              }
+            });
+            long time = System.currentTimeMillis() - start;
+            System.out.println(windowCount + "\t" + wrongWindows.size() + "\t" + mode + "\t" + checks.get() + "\t" + time);
+          }
+        }
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,89 @@
+import org.junit.After;
+import org.junit.Test;
+import ru.compscicenter.edide.StudyWindowLocalizer;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StudyWindowLocalizerTest {
+  private final ExecutorService myExecutor = Executors.newFixedThreadPool(4);
+
+  /**
+   * Passes if none of user windows is wrong
+   */
+  private static class FakeChecker implements StudyWindowLocalizer.Checker<Integer> {
+    private final Set<Integer> myWrongWindows;
+    private final AtomicInteger myRuns = new AtomicInteger();
+
+    FakeChecker(Integer... wrongWindows) {
+      myWrongWindows = new HashSet<Integer>(Arrays.asList(wrongWindows));
+    }
+
+    @Override
+    public boolean passes(List<Integer> userWindows) {
+      myRuns.incrementAndGet();
+      for (Integer window : userWindows) {
+        if (myWrongWindows.contains(window)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private static List<Integer> windows(int count) {
+    List<Integer> windows = new ArrayList<Integer>();
+    for (int i = 0; i < count; i++) {
+      windows.add(i);
+    }
+    return windows;
+  }
+
+  @After
+  public void tearDown() {
+    myExecutor.shutdownNow();
+  }
+
+  private void checkMode(StudyWindowLocalizer.Mode mode, FakeChecker checker, int windowCount) {
+    Map<Integer, Boolean> results = new StudyWindowLocalizer(mode, myExecutor).localize(windows(windowCount), true, checker);
+    assertEquals(windowCount, results.size());
+    for (int i = 0; i < windowCount; i++) {
+      assertEquals(!checker.myWrongWindows.contains(i), results.get(i));
+    }
+  }
+
+  @Test
+  public void testExhaustive() {
+    FakeChecker checker = new FakeChecker(3, 7);
+    checkMode(StudyWindowLocalizer.Mode.EXHAUSTIVE, checker, 16);
+    assertEquals(16, checker.myRuns.get());
+  }
+
+  @Test
+  public void testBisect() {
+    FakeChecker checker = new FakeChecker(3, 7);
+    checkMode(StudyWindowLocalizer.Mode.BISECT, checker, 16);
+    assertTrue(checker.myRuns.get() < 16);
+  }
+
+  @Test
+  public void testBisectOneWindow() {
+    FakeChecker checker = new FakeChecker(0);
+    checkMode(StudyWindowLocalizer.Mode.BISECT, checker, 1);
+    assertEquals(0, checker.myRuns.get());
+  }
+
+  @Test
+  public void testBisectNotKnownFailed() {
+    FakeChecker checker = new FakeChecker();
+    Map<Integer, Boolean> results =
+      new StudyWindowLocalizer(StudyWindowLocalizer.Mode.BISECT, myExecutor).localize(windows(5), false, checker);
+    assertEquals(5, results.size());
+    assertEquals(1, checker.myRuns.get());
+  }
+}
@@ -0,0 +1,167 @@
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.impl.DocumentImpl;
+import org.junit.Test;
+import ru.compscicenter.edide.StudyDocumentListener;
+import ru.compscicenter.edide.StudyEditSession;
+import ru.compscicenter.edide.course.TaskFile;
+import ru.compscicenter.edide.course.TaskWindow;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Replays random edit sessions and checks that windows tracked by {@link ru.compscicenter.edide.StudyDocumentListener}
+ * are where reference implementation working with plain offsets puts them. Changes are made either inside one window
+ * or between windows without touching them, as student types.
+ */
+public class StudyWindowTrackingFuzzTest {
+  private static final long SEED = 42;
+  private static final int SESSIONS = 300;
+  private static final int CHANGES = 50;
+  private static final String ALPHABET = "ab \n";
+
+  @Test
+  public void testChangeByChange() throws IOException {
+    Random random = new Random(SEED);
+    for (int session = 0; session < SESSIONS; session++) {
+      List<int[]> reference = new ArrayList<int[]>();
+      StudyEditSession editSession = writeAndRead(generate(random, reference));
+      Document document = new DocumentImpl(editSession.getText());
+      TaskFile taskFile = editSession.createTaskFile();
+      document.addDocumentListener(new StudyDocumentListener(taskFile));
+      for (StudyEditSession.Change change : editSession.getChanges()) {
+        change.apply(document);
+        apply(reference, change);
+        assertWindows("session " + session, reference, taskFile, document);
+      }
+    }
+  }
+
+  @Test
+  public void testBulkUpdate() throws IOException {
+    Random random = new Random(SEED + 1);
+    for (int session = 0; session < SESSIONS; session++) {
+      List<int[]> reference = new ArrayList<int[]>();
+      StudyEditSession editSession = writeAndRead(generate(random, reference));
+      Document document = new DocumentImpl(editSession.getText());
+      TaskFile taskFile = editSession.createTaskFile();
+      StudyDocumentListener listener = new StudyDocumentListener(taskFile);
+      document.addDocumentListener(listener);
+      listener.bulkUpdateStarted(document);
+      editSession.replay(document);
+      listener.bulkUpdateFinished(document);
+      for (StudyEditSession.Change change : editSession.getChanges()) {
+        apply(reference, change);
+      }
+      assertWindows("session " + session, reference, taskFile, document);
+    }
+  }
+
+  private static void assertWindows(String message, List<int[]> reference, TaskFile taskFile, Document document) {
+    List<TaskWindow> taskWindows = taskFile.getTaskWindows();
+    assertEquals(message, reference.size(), taskWindows.size());
+    for (int i = 0; i < reference.size(); i++) {
+      int start = taskWindows.get(i).getRealStartOffset(document);
+      assertEquals(message + ", window " + i, reference.get(i)[0], start);
+      assertEquals(message + ", window " + i, reference.get(i)[1], start + taskWindows.get(i).getLength());
+    }
+  }
+
+  /**
+   * Reference implementation: window containing changed fragment is resized, windows after it are moved
+   */
+  private static void apply(List<int[]> windows, StudyEditSession.Change change) {
+    int offset = change.getOffset();
+    int oldEnd = offset + change.getOldFragment().length();
+    int delta = change.getNewFragment().length() - change.getOldFragment().length();
+    boolean resized = false;
+    for (int[] window : windows) {
+      if (!resized && window[0] <= offset && oldEnd <= window[1]) {
+        window[1] += delta;
+        resized = true;
+      }
+      else if (window[0] >= oldEnd) {
+        window[0] += delta;
+        window[1] += delta;
+      }
+    }
+  }
+
+  /**
+   * Generates session and fills reference with start and end offsets of its windows
+   */
+  private static StudyEditSession generate(Random random, List<int[]> reference) {
+    StringBuilder text = new StringBuilder(randomText(random, 1 + random.nextInt(10)));
+    int windowCount = random.nextInt(6);
+    for (int i = 0; i < windowCount; i++) {
+      int start = text.length();
+      text.append(randomText(random, random.nextInt(6)));
+      reference.add(new int[]{start, text.length()});
+      // windows don't touch each other
+      text.append(randomText(random, 1 + random.nextInt(10)));
+    }
+    Document document = new DocumentImpl(text);
+    List<int[]> windows = new ArrayList<int[]>();
+    for (int[] window : reference) {
+      int line = document.getLineNumber(window[0]);
+      windows.add(new int[]{line, window[0] - document.getLineStartOffset(line), window[1] - window[0]});
+    }
+
+    List<int[]> current = new ArrayList<int[]>();
+    for (int[] window : reference) {
+      current.add(window.clone());
+    }
+    List<StudyEditSession.Change> changes = new ArrayList<StudyEditSession.Change>();
+    for (int i = 0; i < CHANGES; i++) {
+      // bounds of region change is made in: window or gap between windows without its ends
+      int regionCount = current.size() * 2 + 1;
+      int region = random.nextInt(regionCount);
+      int from;
+      int to;
+      if (region % 2 == 1) {
+        int[] window = current.get(region / 2);
+        from = window[0];
+        to = window[1];
+      }
+      else {
+        from = region == 0 ? 0 : current.get(region / 2 - 1)[1] + 1;
+        to = region == regionCount - 1 ? text.length() : current.get(region / 2)[0] - 1;
+        if (from > to) {
+          continue;
+        }
+      }
+      int offset = from + random.nextInt(to - from + 1);
+      int oldEnd = offset + random.nextInt(to - offset + 1);
+      String newFragment = randomText(random, random.nextInt(4));
+      if (region % 2 == 0 && newFragment.isEmpty() && oldEnd == offset) {
+        continue;
+      }
+      StudyEditSession.Change change =
+        new StudyEditSession.Change(random.nextInt(1000000), offset, text.substring(offset, oldEnd), newFragment);
+      text.replace(offset, oldEnd, newFragment);
+      apply(current, change);
+      changes.add(change);
+    }
+    return new StudyEditSession(document.getText(), windows, changes);
+  }
+
+  private static String randomText(Random random, int length) {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+    }
+    return text.toString();
+  }
+
+  private static StudyEditSession writeAndRead(StudyEditSession session) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    session.write(output);
+    return StudyEditSession.read(new ByteArrayInputStream(output.toByteArray()));
+  }
+}
@@ -0,0 +1,95 @@
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.impl.DocumentImpl;
+import org.junit.Test;
+import ru.compscicenter.edide.course.TaskFile;
+import ru.compscicenter.edide.course.TaskWindow;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TaskFileTest {
+  @Test
+  public void testGetTaskWindow() {
+    Document document = new DocumentImpl("a = 42\nprint(b, c)\n");
+    TaskFile taskFile = new TaskFile();
+    TaskWindow first = addWindow(taskFile, 0, 4, 2);
+    TaskWindow second = addWindow(taskFile, 1, 6, 1);
+    TaskWindow third = addWindow(taskFile, 1, 7, 3);
+    assertNull(taskFile.getTaskWindow(document, 3));
+    assertSame(first, taskFile.getTaskWindow(document, 4));
+    assertSame(first, taskFile.getTaskWindow(document, 6));
+    assertNull(taskFile.getTaskWindow(document, 7));
+    assertSame(second, taskFile.getTaskWindow(document, 13));
+    // adjacent windows, the first one is found as by linear scan
+    assertSame(second, taskFile.getTaskWindow(document, 14));
+    assertSame(third, taskFile.getTaskWindow(document, 15));
+    assertNull(taskFile.getTaskWindow(document, 18));
+    assertEquals(Arrays.asList(first, second), taskFile.getTaskWindows(document, 6, 13));
+    assertEquals(Collections.<TaskWindow>emptyList(), taskFile.getTaskWindows(document, 7, 12));
+  }
+
+  @Test
+  public void testGetTaskWindowMatchesScan() {
+    Random random = new Random(42);
+    StringBuilder text = new StringBuilder();
+    TaskFile taskFile = new TaskFile();
+    for (int line = 0; line < 200; line++) {
+      int column = 0;
+      while (random.nextBoolean()) {
+        int start = column + random.nextInt(3);
+        int length = random.nextInt(4);
+        addWindow(taskFile, line, start, length);
+        column = start + length;
+      }
+      for (int i = 0; i < column + 2; i++) {
+        text.append('x');
+      }
+      text.append('\n');
+    }
+    Document document = new DocumentImpl(text);
+    for (int offset = 0; offset <= document.getTextLength(); offset++) {
+      TaskWindow expected = null;
+      for (TaskWindow taskWindow : taskFile.getTaskWindows()) {
+        int start = taskWindow.getRealStartOffset(document);
+        if (start <= offset && offset <= start + taskWindow.getLength()) {
+          expected = taskWindow;
+          break;
+        }
+      }
+      assertSame(expected, taskFile.getTaskWindow(document, offset));
+    }
+  }
+
+  @Test
+  public void testUpdateWindows() {
+    TaskFile taskFile = new TaskFile();
+    TaskWindow first = addWindow(taskFile, 0, 4, 2);
+    TaskWindow second = addWindow(taskFile, 1, 6, 1);
+    TaskWindow third = addWindow(taskFile, 2, 0, 1);
+    // "b" typed before second window and line break is inserted before it
+    taskFile.updateWindows(1, 1, 1, 6);
+    assertEquals(0, first.getLine());
+    assertEquals(2, second.getLine());
+    assertEquals(1, second.getStart());
+    assertEquals(3, third.getLine());
+    // lines 1 and 2 are joined
+    taskFile.updateWindows(2, -1, 6, 0);
+    assertEquals(1, second.getLine());
+    assertEquals(7, second.getStart());
+    assertEquals(2, third.getLine());
+  }
+
+  private static TaskWindow addWindow(TaskFile taskFile, int line, int start, int length) {
+    TaskWindow taskWindow = new TaskWindow();
+    taskWindow.setLine(line);
+    taskWindow.setStart(start);
+    taskWindow.setLength(length);
+    taskFile.getTaskWindows().add(taskWindow);
+    return taskWindow;
+  }
+}
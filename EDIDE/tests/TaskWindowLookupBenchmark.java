@@ -0,0 +1,69 @@
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.impl.DocumentImpl;
+import ru.compscicenter.edide.course.TaskFile;
+import ru.compscicenter.edide.course.TaskWindow;
+
+import java.util.Random;
+
+/**
+ * Compares lookup of task window by offset with binary search against linear scan of all the windows,
+ * which was used before, on synthetic files with one window per line. Average time of lookup is printed.
+ * <p/>
+ * Usage: TaskWindowLookupBenchmark [lookups]
+ */
+public class TaskWindowLookupBenchmark {
+  private static final int[] WINDOW_COUNTS = {10, 100, 1000, 10000};
+  private static final int WARMUP_ROUNDS = 3;
+  private static final long SEED = 42;
+  private static final String PLACEHOLDER = "type here";
+
+  public static void main(String[] args) {
+    int lookups = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    Random random = new Random(SEED);
+    System.out.println("windows\tscan, ns\tindex, ns\tfound");
+    for (int windowCount : WINDOW_COUNTS) {
+      StringBuilder text = new StringBuilder();
+      TaskFile taskFile = new TaskFile();
+      for (int line = 0; line < windowCount; line++) {
+        String prefix = "value_" + line + " = ";
+        text.append(prefix).append(PLACEHOLDER).append("\n");
+        TaskWindow taskWindow = new TaskWindow();
+        taskWindow.setLine(line);
+        taskWindow.setStart(prefix.length());
+        taskWindow.setLength(PLACEHOLDER.length());
+        taskFile.getTaskWindows().add(taskWindow);
+      }
+      Document document = new DocumentImpl(text);
+      int[] offsets = new int[lookups];
+      for (int i = 0; i < lookups; i++) {
+        offsets[i] = random.nextInt(document.getTextLength());
+      }
+      long scanTime = 0;
+      long indexTime = 0;
+      int found = 0;
+      for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+        long start = System.nanoTime();
+        for (int offset : offsets) {
+          found += scan(taskFile, document, offset) != null ? 1 : 0;
+        }
+        scanTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int offset : offsets) {
+          found += taskFile.getTaskWindow(document, offset) != null ? 1 : 0;
+        }
+        indexTime = System.nanoTime() - start;
+      }
+      System.out.println(windowCount + "\t" + scanTime / lookups + "\t" + indexTime / lookups + "\t" + found);
+    }
+  }
+
+  private static TaskWindow scan(TaskFile taskFile, Document document, int offset) {
+    for (TaskWindow taskWindow : taskFile.getTaskWindows()) {
+      int start = taskWindow.getRealStartOffset(document);
+      if (start <= offset && offset <= start + taskWindow.getLength()) {
+        return taskWindow;
+      }
+    }
+    return null;
+  }
+}